@@ -0,0 +1,195 @@
+package searchclient;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+
+/** Checkpoint saves a running search to a file every so often, so a search that is killed can be resumed with -resume.
+ *
+ * The file holds a node table with every explored and frontier node and all their ancestors. Each node is stored as
+ * the index of its parent and the index of its action in Command.EVERY, five bytes in all. States are not stored:
+ * they are rebuilt on resume by replaying the actions from the initial state, parents before children. The table is
+ * followed by the indices of the explored nodes and of the frontier nodes. A header with the level key (see
+ * SolutionCache) and the strategy name makes sure a checkpoint is only resumed by the same search.
+ *
+ * A checkpoint is written to a temporary file and then moved over the previous one, so a kill during a write leaves
+ * the previous checkpoint intact.
+ */
+public class Checkpoint {
+    public static final int DEFAULT_INTERVAL = 60;
+    private static final int MAGIC = 0x53434350; // "SCCP"
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final File file;
+    private final long intervalMillis;
+    private long lastWrite = System.currentTimeMillis();
+
+    public Checkpoint(File file, int intervalSeconds) {
+        this.file = file;
+        this.intervalMillis = intervalSeconds * 1000L;
+    }
+
+    /**
+     * Writes a checkpoint of the search if the interval has passed since the previous one.
+     * Called by SearchClient.Search between iterations, so the strategy is not being modified.
+     */
+    public void maybeWrite(SearchClient client, Strategy strategy) throws IOException {
+        if (System.currentTimeMillis() - this.lastWrite < this.intervalMillis) {
+            return;
+        }
+        this.write(client, strategy);
+        this.lastWrite = System.currentTimeMillis();
+    }
+
+    public void write(SearchClient client, Strategy strategy) throws IOException {
+        long start = System.currentTimeMillis();
+        Collection<Node> explored = strategy.exploredNodes();
+        Collection<Node> frontier = strategy.frontierNodes();
+
+        // Number the nodes so that every parent comes before its children; the initial state is node 0.
+        IdentityHashMap<Node, Integer> index = new IdentityHashMap<>();
+        ArrayList<Node> table = new ArrayList<>();
+        index.put(client.initialState, 0);
+        table.add(client.initialState);
+        ArrayList<Node> path = new ArrayList<>();
+        for (Collection<Node> nodes : Arrays.asList(explored, frontier)) {
+            for (Node n : nodes) {
+                for (Node m = n; !index.containsKey(m); m = m.parent) {
+                    path.add(m);
+                }
+                for (int i = path.size() - 1; i >= 0; i--) {
+                    index.put(path.get(i), table.size());
+                    table.add(path.get(i));
+                }
+                path.clear();
+            }
+        }
+
+        File tmp = new File(this.file.getPath() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            putString(buffer, SolutionCache.levelKey(client));
+            putString(buffer, strategy.toString());
+
+            buffer.putInt(table.size());
+            for (int i = 1; i < table.size(); i++) {
+                Node n = table.get(i);
+                drainIfFull(channel, buffer, 5);
+                buffer.putInt(index.get(n.parent));
+                buffer.put((byte) Command.indexOf(n.action));
+            }
+            for (Collection<Node> nodes : Arrays.asList(explored, frontier)) {
+                drainIfFull(channel, buffer, 4);
+                buffer.putInt(nodes.size());
+                for (Node n : nodes) {
+                    drainIfFull(channel, buffer, 4);
+                    buffer.putInt(index.get(n));
+                }
+            }
+            drain(channel, buffer);
+            channel.force(false);
+        }
+        Files.move(tmp.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        System.err.format("Checkpoint of %,d nodes written to %s in %3.2f s.\n", table.size(), this.file,
+                (System.currentTimeMillis() - start) / 1000f);
+    }
+
+    /**
+     * Restores the search saved in file into strategy, which must be a new strategy of the kind that wrote it.
+     * Returns false, leaving strategy untouched, if the file is missing or belongs to another level or strategy.
+     */
+    public static boolean restore(File file, SearchClient client, Strategy strategy) throws IOException {
+        if (!file.isFile()) {
+            System.err.format("No checkpoint found at %s, starting a new search.\n", file);
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                System.err.format("Ignoring %s, which is not a checkpoint of this version.\n", file);
+                return false;
+            }
+            if (!getString(buffer).equals(SolutionCache.levelKey(client))) {
+                System.err.format("Ignoring checkpoint %s, which is of another level.\n", file);
+                return false;
+            }
+            String name = getString(buffer);
+            if (!name.equals(strategy.toString())) {
+                System.err.format("Ignoring checkpoint %s, which was written by %s.\n", file, name);
+                return false;
+            }
+
+            // Rebuild the states by replaying every node's action on its parent.
+            Node[] nodes = new Node[buffer.getInt()];
+            nodes[0] = client.initialState;
+            nodes[0].countUnsatisfiedGoals(client.goals);
+            for (int i = 1; i < nodes.length; i++) {
+                Node parent = nodes[buffer.getInt()];
+                nodes[i] = parent.childFor(Command.EVERY[buffer.get()]);
+                if (nodes[i] == null) {
+                    System.err.format("Ignoring checkpoint %s, which does not apply to this level.\n", file);
+                    return false;
+                }
+            }
+            Node[] explored = new Node[buffer.getInt()];
+            for (int i = 0; i < explored.length; i++) {
+                explored[i] = nodes[buffer.getInt()];
+            }
+            Node[] frontier = new Node[buffer.getInt()];
+            for (int i = 0; i < frontier.length; i++) {
+                frontier[i] = nodes[buffer.getInt()];
+            }
+
+            for (Node n : explored) {
+                strategy.addToExplored(n);
+            }
+            for (Node n : frontier) {
+                strategy.addToFrontier(n);
+            }
+            System.err.format("Resumed search from %s with %,d explored and %,d frontier nodes.\n", file,
+                    explored.length, frontier.length);
+            return true;
+        }
+    }
+
+    private static void putString(ByteBuffer buffer, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Writes out the buffer if fewer than needed bytes are left in it.
+    private static void drainIfFull(FileChannel channel, ByteBuffer buffer, int needed) throws IOException {
+        if (buffer.remaining() < needed) {
+            drain(channel, buffer);
+        }
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -1,5 +1,6 @@
 package searchclient;
 
+import java.util.HashMap;
 import java.util.LinkedList;
 
 public class Command {
@@ -13,6 +14,7 @@ public class Command {
 	};
 	
 	public static final Command[] EVERY;
+	private static final HashMap<String, Command> BY_NAME = new HashMap<String, Command>();
 	static {
 		LinkedList<Command> cmds = new LinkedList<Command>();
 		for (Dir d1 : Dir.values()) {
@@ -34,6 +36,33 @@ public class Command {
 		}
 
 		EVERY = cmds.toArray(new Command[0]);
+		for (Command c : EVERY) {
+			BY_NAME.put(c.toString(), c);
+		}
+	}
+
+	/**
+	 * Position of c in EVERY, so a command fits in a single byte when stored.
+	 */
+	public static int indexOf(Command c) {
+		for (int i = 0; i < EVERY.length; i++) {
+			if (EVERY[i] == c) {
+				return i;
+			}
+		}
+		throw new IllegalArgumentException("Not one of Command.EVERY: " + c);
+	}
+
+	/**
+	 * The command that toString writes as s, e.g. [Push(E,S)], with or without the brackets and surrounding
+	 * whitespace, or null if there is no such command.
+	 */
+	public static Command parse(String s) {
+		s = s.trim();
+		if (!s.startsWith("[")) {
+			s = "[" + s + "]";
+		}
+		return BY_NAME.get(s);
 	}
 
 	public static boolean isOpposite(Dir d1, Dir d2) {
@@ -0,0 +1,68 @@
+package searchclient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/** DaemonClient is the client command to give the server when a SolverDaemon is running.
+ *
+ * It sends its arguments to the daemon and then copies the server's messages to the daemon and the daemon's actions
+ * back, so to the server it looks like SearchClient. It only uses a socket and two byte streams, and so starts in a
+ * fraction of the time SearchClient needs before its search begins:
+ *   $ java -jar server.jar -l levels/SAD1.lvl -c "java searchclient.DaemonClient -port 6543 -astar" -g 50 -t 300
+ * Any argument other than -port is passed on to the daemon; see Solver for the ones it accepts.
+ */
+public class DaemonClient {
+    public static void main(String[] args) throws Exception {
+        int port = SolverDaemon.DEFAULT_PORT;
+        StringBuilder solverArgs = new StringBuilder();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-port")) {
+                port = Integer.parseInt(args[++i]);
+            } else {
+                solverArgs.append(solverArgs.length() > 0 ? " " : "").append(args[i]);
+            }
+        }
+
+        Socket socket;
+        try {
+            socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        } catch (IOException ex) {
+            System.err.format("No SolverDaemon on port %d: %s\n", port, ex.getMessage());
+            System.exit(1);
+            return;
+        }
+        socket.setTcpNoDelay(true);
+        OutputStream toDaemon = socket.getOutputStream();
+        toDaemon.write((solverArgs + "\n").getBytes(StandardCharsets.UTF_8));
+        toDaemon.flush();
+
+        Thread upstream = new Thread(() -> {
+            try {
+                copy(System.in, toDaemon);
+                socket.shutdownOutput();
+            } catch (IOException ex) {
+                // The daemon closed the connection.
+            }
+        }, "DaemonClient-upstream");
+        upstream.setDaemon(true);
+        upstream.start();
+
+        // The daemon closes the connection when it is done with the level.
+        copy(socket.getInputStream(), System.out);
+        System.exit(0);
+    }
+
+    // Copies until in ends, flushing after every read so that no line waits in a buffer.
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,763 @@
+package searchclient;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+import searchclient.Heuristic.*;
+
+/** DistributedSearch spreads one best-first search over several worker processes, so that it can use the memory and
+ * cores of all of them. Every state belongs to one worker, chosen by its hash, and only that worker keeps it in its
+ * frontier and in its table of reached states.
+ *
+ * The coordinator is the client that the server starts. It reads the level, starts the local workers and waits for
+ * the remote ones to connect, sends every worker the level and the strategy, and puts the initial state in the
+ * frontier of its owner. From then on it relays batches of states: a worker collects the successors owned by other
+ * workers in a batch per owner and sends them to the coordinator after every round of expansions, and the coordinator
+ * passes each batch on to its owner. A state travels packed: the agent cell, the cell and letter of every box, its
+ * path cost, and the packed parent state and action that reached it. All connections are TCP sockets on non-blocking
+ * NIO channels.
+ *
+ * A worker that expands a goal state reports it. The coordinator halts the others and rebuilds the plan backwards,
+ * asking the owner of each state on the path for the parent and action that reached it. If instead every worker is
+ * idle and has processed every batch the coordinator passed to it, the frontier is empty everywhere and the level has
+ * no solution. Each worker expands in the order of its own frontier, so the first goal expanded anywhere wins and
+ * plans are not optimal, even with -astar.
+ *   $ java -jar server.jar -l levels/SAsoko3_12.lvl -c "java searchclient.DistributedSearch -workers 4 -astar" -g 50 -t 300
+ * Workers on other machines connect to a coordinator that listens on a known port and expects them with -remote:
+ *   $ java -jar server.jar -l levels/SAsoko3_12.lvl -c "java searchclient.DistributedSearch -workers 2 -remote 2 -port 7000 -astar" -t 300
+ *   other$ java searchclient.DistributedSearch -worker -connect coordinator-host:7000
+ */
+public class DistributedSearch {
+    // Frames from the coordinator to a worker.
+    private static final byte LEVEL = 1;
+    private static final byte STATES = 2;
+    private static final byte TRACE = 3;
+    private static final byte HALT = 4;
+    private static final byte EXIT = 5;
+    // Frames from a worker to the coordinator, besides STATES.
+    private static final byte IDLE = 6;
+    private static final byte STATUS = 7;
+    private static final byte FOUND = 8;
+    private static final byte TRACED = 9;
+
+    // Expansions between a worker's batches, and between its status reports.
+    private static final int ROUND = 256;
+    private static final int STATUS_INTERVAL = 10000;
+    private static final long CONNECT_TIMEOUT_MS = 60000;
+
+    /**
+     * A byte buffer that grows as it is written.
+     */
+    static class Out {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+
+        private ByteBuffer ensure(int bytes) {
+            if (this.buffer.remaining() < bytes) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(this.buffer.capacity() * 2, this.buffer.position() + bytes));
+                this.buffer.flip();
+                larger.put(this.buffer);
+                this.buffer = larger;
+            }
+            return this.buffer;
+        }
+
+        Out putInt(int v) {
+            this.ensure(4).putInt(v);
+            return this;
+        }
+
+        Out putLong(long v) {
+            this.ensure(8).putLong(v);
+            return this;
+        }
+
+        Out put(byte v) {
+            this.ensure(1).put(v);
+            return this;
+        }
+
+        // A length followed by the bytes.
+        Out putBytes(byte[] v) {
+            this.ensure(4 + v.length).putInt(v.length).put(v);
+            return this;
+        }
+
+        Out put(ByteBuffer v) {
+            this.ensure(v.remaining()).put(v);
+            return this;
+        }
+
+        int size() {
+            return this.buffer.position();
+        }
+
+        // What has been written, ready to be read.
+        ByteBuffer flip() {
+            ByteBuffer b = this.buffer.duplicate();
+            b.flip();
+            return b;
+        }
+
+        void clear() {
+            this.buffer.clear();
+        }
+    }
+
+    private static byte[] getBytes(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * A non-blocking channel carrying frames: the length of the rest, a type byte and the payload.
+     */
+    static class Connection {
+        final SocketChannel channel;
+        private ByteBuffer in = ByteBuffer.allocate(1 << 16);
+        private final ArrayDeque<ByteBuffer> out = new ArrayDeque<>();
+        boolean closed = false;
+
+        Connection(SocketChannel channel) throws IOException {
+            this.channel = channel;
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        }
+
+        void send(byte type, ByteBuffer payload) {
+            ByteBuffer frame = ByteBuffer.allocate(5 + payload.remaining());
+            frame.putInt(1 + payload.remaining()).put(type).put(payload).flip();
+            this.out.add(frame);
+        }
+
+        void send(byte type) {
+            this.send(type, ByteBuffer.allocate(0));
+        }
+
+        /**
+         * Writes as much as the channel takes now; returns whether everything has been written.
+         */
+        boolean flush() throws IOException {
+            while (!this.out.isEmpty()) {
+                ByteBuffer frame = this.out.peek();
+                this.channel.write(frame);
+                if (frame.hasRemaining()) {
+                    return false;
+                }
+                this.out.poll();
+            }
+            return true;
+        }
+
+        /**
+         * Reads what has arrived and returns the complete frames, each starting with its type. Sets closed once the
+         * other end has closed the connection.
+         */
+        List<ByteBuffer> receive() throws IOException {
+            while (true) {
+                if (!this.in.hasRemaining()) {
+                    ByteBuffer larger = ByteBuffer.allocate(this.in.capacity() * 2);
+                    this.in.flip();
+                    larger.put(this.in);
+                    this.in = larger;
+                }
+                int n = this.channel.read(this.in);
+                if (n < 0) {
+                    this.closed = true;
+                }
+                if (n <= 0) {
+                    break;
+                }
+            }
+            List<ByteBuffer> frames = new ArrayList<>();
+            this.in.flip();
+            while (this.in.remaining() >= 4 && this.in.remaining() >= 4 + this.in.getInt(this.in.position())) {
+                byte[] frame = new byte[this.in.getInt()];
+                this.in.get(frame);
+                frames.add(ByteBuffer.wrap(frame));
+            }
+            this.in.compact();
+            return frames;
+        }
+    }
+
+    /**
+     * Packs a state: the agent cell, the number of boxes, and the cell and letter of each box.
+     */
+    static byte[] pack(Node n) {
+        char[] boxes = n.boxes();
+        int count = 0;
+        for (char b : boxes) {
+            if (b != 0) {
+                count++;
+            }
+        }
+        ByteBuffer out = ByteBuffer.allocate(8 + 5 * count);
+        out.putInt(n.agent).putInt(count);
+        for (int cell = 0; cell < boxes.length; cell++) {
+            if (boxes[cell] != 0) {
+                out.putInt(cell).put((byte) boxes[cell]);
+            }
+        }
+        return out.array();
+    }
+
+    static Node unpack(byte[] state, Level level, int g) {
+        ByteBuffer in = ByteBuffer.wrap(state);
+        int agent = in.getInt();
+        char[] boxes = new char[level.cells];
+        for (int count = in.getInt(); count > 0; count--) {
+            int cell = in.getInt();
+            boxes[cell] = (char) in.get();
+        }
+        return new Node(level, agent, boxes, g);
+    }
+
+    // The worker that owns a state. Node.hashCode only depends on the state, so every process agrees on it.
+    static int owner(Node n, int workers) {
+        return Math.floorMod(n.hashCode(), workers);
+    }
+
+    static Heuristic heuristic(String strategyArg, String strategyParam, SearchClient client) {
+        switch (strategyArg) {
+            case "-wastar":
+                int w = strategyParam != null ? Integer.parseInt(strategyParam) : 5;
+                return new WeightedAStar(client.level, client.goals, w);
+            case "-greedy":
+                return new Greedy(client.level, client.goals);
+            case "-astar":
+                return new AStar(client.level, client.goals);
+            default:
+                throw new IllegalArgumentException("DistributedSearch supports -astar, -wastar [W] and -greedy, not " + strategyArg);
+        }
+    }
+
+    /**
+     * One worker process: a best-first search over the states it owns.
+     */
+    static class Worker {
+        // How a state was reached: its path cost, the action and the packed parent, which is empty for the initial state.
+        private static class Reached {
+            final int g;
+            final byte action;
+            final byte[] parent;
+
+            Reached(int g, byte action, byte[] parent) {
+                this.g = g;
+                this.action = action;
+                this.parent = parent;
+            }
+        }
+
+        private final Connection connection;
+        private int id;
+        private int workers;
+        private Level level;
+        private char[] goals;
+        private Heuristic heuristic;
+
+        private final IndexedHeap frontier = new IndexedHeap();
+        private final HashMap<Node, Reached> reached = new HashMap<>();
+        private Out[] outboxes;
+        private int[] outboxCounts;
+        private final Random rnd = new Random(1);
+
+        private boolean searching = true;
+        private boolean exit = false;
+        private int processed = 0;
+        private long expanded = 0;
+        private long lastStatus = 0;
+
+        Worker(Connection connection) {
+            this.connection = connection;
+        }
+
+        private void handle(ByteBuffer frame) throws Exception {
+            switch (frame.get()) {
+                case LEVEL:
+                    this.id = frame.getInt();
+                    this.workers = frame.getInt();
+                    String[] strategy = new String(getBytes(frame), StandardCharsets.UTF_8).split(" ", 2);
+                    SearchClient client = Solver.parseLevel(new String(getBytes(frame), StandardCharsets.UTF_8));
+                    this.level = client.level;
+                    this.goals = client.goals;
+                    this.heuristic = heuristic(strategy[0], strategy.length > 1 ? strategy[1] : null, client);
+                    this.outboxes = new Out[this.workers];
+                    this.outboxCounts = new int[this.workers];
+                    for (int w = 0; w < this.workers; w++) {
+                        this.outboxes[w] = new Out();
+                    }
+                    System.err.format("Worker %d of %d ready, using %s.\n", this.id, this.workers, this.heuristic);
+                    break;
+                case STATES:
+                    this.processed++;
+                    for (int count = frame.getInt(); count > 0; count--) {
+                        int g = frame.getInt();
+                        byte action = frame.get();
+                        byte[] parent = getBytes(frame);
+                        Node n = unpack(getBytes(frame), this.level, g);
+                        this.insert(n, g, action, parent);
+                    }
+                    break;
+                case TRACE:
+                    byte[] state = getBytes(frame);
+                    Reached r = this.reached.get(unpack(state, this.level, 0));
+                    Out reply = new Out().putBytes(state);
+                    if (r == null) {
+                        reply.put((byte) -1).putBytes(new byte[0]);
+                    } else {
+                        reply.put(r.action).putBytes(r.parent);
+                    }
+                    this.connection.send(TRACED, reply.flip());
+                    break;
+                case HALT:
+                    this.searching = false;
+                    break;
+                case EXIT:
+                    this.exit = true;
+                    break;
+                default:
+                    throw new IOException("Unknown frame from the coordinator");
+            }
+        }
+
+        // Orders by f, then by g; neither term grows when a state is reached again by a shorter path.
+        private long key(Node n) {
+            return ((long) this.heuristic.f(n) << 32) + n.g();
+        }
+
+        // Adds a state owned by this worker, unless it has already been reached by a path at least as short.
+        private void insert(Node n, int g, byte action, byte[] parent) {
+            Reached old = this.reached.get(n);
+            if (old != null && old.g <= g) {
+                return;
+            }
+            // HashMap.put would keep the old node as the key; remove first so the map holds n.
+            this.reached.remove(n);
+            this.reached.put(n, new Reached(g, action, parent));
+            if (this.frontier.contains(n)) {
+                this.frontier.replace(n, this.key(n));
+            } else {
+                this.frontier.add(n, this.key(n));
+            }
+        }
+
+        // Expands up to ROUND states, keeping the successors owned here and batching the others.
+        private void expandRound() {
+            for (int i = 0; i < ROUND && !this.frontier.isEmpty(); i++) {
+                Node n = this.frontier.poll();
+                this.expanded++;
+                if (n.isGoalState(this.goals)) {
+                    this.connection.send(FOUND, new Out().putBytes(pack(n)).flip());
+                    this.searching = false;
+                    return;
+                }
+                byte[] packed = pack(n);
+                for (Node child : n.getExpandedNodes(this.rnd)) {
+                    child.parent = null;
+                    byte action = (byte) Command.indexOf(child.action);
+                    int w = owner(child, this.workers);
+                    if (w == this.id) {
+                        this.insert(child, child.g(), action, packed);
+                    } else {
+                        this.outboxes[w].putInt(child.g()).put(action).putBytes(packed).putBytes(pack(child));
+                        this.outboxCounts[w]++;
+                    }
+                }
+            }
+        }
+
+        private void sendOutboxes() {
+            for (int w = 0; w < this.workers; w++) {
+                if (this.outboxCounts[w] > 0) {
+                    Out batch = new Out().putInt(w).putInt(this.outboxCounts[w]).put(this.outboxes[w].flip());
+                    this.connection.send(STATES, batch.flip());
+                    this.outboxes[w].clear();
+                    this.outboxCounts[w] = 0;
+                }
+            }
+        }
+
+        private ByteBuffer counters() {
+            return new Out().putInt(this.processed).putLong(this.expanded).putInt(this.frontier.size())
+                    .putInt(this.reached.size()).flip();
+        }
+
+        void run() throws Exception {
+            Selector selector = Selector.open();
+            SelectionKey key = this.connection.channel.register(selector, SelectionKey.OP_READ);
+            boolean reportedIdle = false;
+            int reportedProcessed = -1;
+            while (!this.exit) {
+                if (this.searching && !this.frontier.isEmpty()) {
+                    selector.selectNow();
+                } else {
+                    selector.select(100);
+                }
+                selector.selectedKeys().clear();
+                for (ByteBuffer frame : this.connection.receive()) {
+                    this.handle(frame);
+                }
+                if (this.connection.closed) {
+                    break;
+                }
+                if (this.heuristic != null && this.searching) {
+                    if (!this.frontier.isEmpty()) {
+                        this.expandRound();
+                        this.sendOutboxes();
+                        reportedIdle = false;
+                        if (this.expanded - this.lastStatus >= STATUS_INTERVAL) {
+                            this.connection.send(STATUS, this.counters());
+                            this.lastStatus = this.expanded;
+                        }
+                    } else if (!reportedIdle || this.processed != reportedProcessed) {
+                        // Batches go out before the report, so the coordinator has routed them when it reads it.
+                        this.sendOutboxes();
+                        this.connection.send(IDLE, this.counters());
+                        reportedIdle = true;
+                        reportedProcessed = this.processed;
+                    }
+                }
+                boolean flushed = this.connection.flush();
+                key.interestOps(flushed ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            }
+            this.connection.channel.close();
+        }
+    }
+
+    /**
+     * The coordinator's side of a search: the connections to the workers and what is known of each.
+     */
+    static class Coordinator {
+        private final SearchClient client;
+        private final String levelText;
+        private final String strategy;
+        private final Connection[] workers;
+        private final int[] routed;
+        private final int[] processed;
+        private final boolean[] idle;
+        private final long[] expanded;
+        private final int[] frontier;
+        private final int[] stored;
+        private final long startTime = System.currentTimeMillis();
+
+        private boolean found = false;
+        private boolean done = false;
+        private final LinkedList<Command> plan = new LinkedList<>();
+
+        Coordinator(SearchClient client, String levelText, String strategy, Connection[] workers) {
+            this.client = client;
+            this.levelText = levelText;
+            this.strategy = strategy;
+            this.workers = workers;
+            int count = workers.length;
+            this.routed = new int[count];
+            this.processed = new int[count];
+            this.idle = new boolean[count];
+            this.expanded = new long[count];
+            this.frontier = new int[count];
+            this.stored = new int[count];
+        }
+
+        private void handle(int from, ByteBuffer frame) throws IOException {
+            byte type = frame.get();
+            switch (type) {
+                case STATES:
+                    int to = frame.getInt();
+                    this.workers[to].send(STATES, frame.slice());
+                    this.routed[to]++;
+                    break;
+                case IDLE:
+                case STATUS:
+                    this.processed[from] = frame.getInt();
+                    this.expanded[from] = frame.getLong();
+                    this.frontier[from] = frame.getInt();
+                    this.stored[from] = frame.getInt();
+                    this.idle[from] = type == IDLE;
+                    break;
+                case FOUND:
+                    if (!this.found) {
+                        this.found = true;
+                        System.err.format("Worker %d found a goal state, reconstructing the plan.\n", from);
+                        for (Connection c : this.workers) {
+                            c.send(HALT);
+                        }
+                        this.trace(getBytes(frame));
+                    }
+                    break;
+                case TRACED:
+                    byte[] state = getBytes(frame);
+                    byte action = frame.get();
+                    byte[] parent = getBytes(frame);
+                    if (action >= 0) {
+                        this.plan.addFirst(Command.EVERY[action]);
+                        this.trace(parent);
+                    } else if (unpack(state, this.client.level, 0).equals(this.client.initialState)) {
+                        this.done = true;
+                    } else {
+                        throw new IOException("Worker " + from + " does not know how a state on the plan was reached");
+                    }
+                    break;
+                default:
+                    throw new IOException("Unknown frame from worker " + from);
+            }
+        }
+
+        private void trace(byte[] state) {
+            Node n = unpack(state, this.client.level, 0);
+            this.workers[owner(n, this.workers.length)].send(TRACE, new Out().putBytes(state).flip());
+        }
+
+        // Every worker has processed every batch passed to it and has nothing left to expand.
+        private boolean exhausted() {
+            for (int w = 0; w < this.workers.length; w++) {
+                if (!this.idle[w] || this.processed[w] != this.routed[w]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public String searchStatus() {
+            long totalExpanded = 0;
+            long totalFrontier = 0;
+            long totalStored = 0;
+            long batches = 0;
+            for (int w = 0; w < this.workers.length; w++) {
+                totalExpanded += this.expanded[w];
+                totalFrontier += this.frontier[w];
+                totalStored += this.stored[w];
+                batches += this.routed[w];
+            }
+            return String.format("#Workers: %d, #Expanded: %,6d, #Frontier: %,6d, #Stored: %,6d, #Batches: %,6d, Time: %3.2f s",
+                    this.workers.length, totalExpanded, totalFrontier, totalStored, batches,
+                    (System.currentTimeMillis() - this.startTime) / 1000f);
+        }
+
+        /**
+         * Runs the search and returns the plan, or null if the level has no solution.
+         */
+        List<Command> solve() throws IOException {
+            Selector selector = Selector.open();
+            SelectionKey[] keys = new SelectionKey[this.workers.length];
+            byte[] strategyBytes = this.strategy.getBytes(StandardCharsets.UTF_8);
+            byte[] levelBytes = this.levelText.getBytes(StandardCharsets.UTF_8);
+            for (int w = 0; w < this.workers.length; w++) {
+                keys[w] = this.workers[w].channel.register(selector, SelectionKey.OP_READ, w);
+                this.workers[w].send(LEVEL, new Out().putInt(w).putInt(this.workers.length).putBytes(strategyBytes)
+                        .putBytes(levelBytes).flip());
+            }
+            Node start = this.client.initialState;
+            int owner = owner(start, this.workers.length);
+            this.workers[owner].send(STATES, new Out().putInt(1).putInt(0).put((byte) -1).putBytes(new byte[0])
+                    .putBytes(pack(start)).flip());
+            this.routed[owner]++;
+
+            long lastStatus = System.currentTimeMillis();
+            while (!this.done) {
+                selector.select(200);
+                selector.selectedKeys().clear();
+                for (int w = 0; w < this.workers.length; w++) {
+                    for (ByteBuffer frame : this.workers[w].receive()) {
+                        this.handle(w, frame);
+                    }
+                    if (this.workers[w].closed && !this.done) {
+                        throw new IOException("Worker " + w + " stopped");
+                    }
+                }
+                if (!this.found && this.exhausted()) {
+                    return null;
+                }
+                for (int w = 0; w < this.workers.length; w++) {
+                    boolean flushed = this.workers[w].flush();
+                    keys[w].interestOps(flushed ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                }
+                if (System.currentTimeMillis() - lastStatus >= 1000) {
+                    System.err.println(this.searchStatus());
+                    lastStatus = System.currentTimeMillis();
+                }
+            }
+            return this.plan;
+        }
+
+        /**
+         * Tells the workers to exit, and waits a little for them to do so.
+         */
+        void shutDown() {
+            for (Connection c : this.workers) {
+                try {
+                    c.send(EXIT);
+                    long deadline = System.currentTimeMillis() + 1000;
+                    while (!c.flush() && System.currentTimeMillis() < deadline) {
+                        Thread.sleep(10);
+                    }
+                    c.channel.close();
+                } catch (IOException | InterruptedException ex) {
+                    // The worker is gone already.
+                }
+            }
+        }
+    }
+
+    // Connects to the coordinator at host:port, retrying while it is not listening yet.
+    private static SocketChannel connect(String address) throws Exception {
+        int colon = address.lastIndexOf(':');
+        InetSocketAddress target = new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+        long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MS;
+        while (true) {
+            try {
+                return SocketChannel.open(target);
+            } catch (IOException ex) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw ex;
+                }
+                Thread.sleep(500);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String connect = null;
+        boolean worker = false;
+        int localWorkers = Runtime.getRuntime().availableProcessors();
+        int remoteWorkers = 0;
+        int port = 0;
+        String heap = null;
+        String strategyArg = "-astar";
+        String strategyParam = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-worker":
+                    worker = true;
+                    break;
+                case "-connect":
+                    connect = args[++i];
+                    break;
+                case "-workers":
+                    localWorkers = Integer.parseInt(args[++i]);
+                    break;
+                case "-remote":
+                    remoteWorkers = Integer.parseInt(args[++i]);
+                    break;
+                case "-port":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "-heap":
+                    // Maximum heap of each local worker, e.g. 2g.
+                    heap = args[++i];
+                    break;
+                default:
+                    strategyArg = args[i].toLowerCase();
+                    if (i + 1 < args.length && !args[i + 1].startsWith("-")) {
+                        strategyParam = args[++i];
+                    }
+            }
+        }
+
+        if (worker) {
+            if (connect == null) {
+                System.err.println("Usage: java searchclient.DistributedSearch -worker -connect <host:port>");
+                System.exit(2);
+            }
+            new Worker(new Connection(connect(connect))).run();
+            return;
+        }
+        if (localWorkers < 0 || remoteWorkers < 0 || localWorkers + remoteWorkers < 1) {
+            System.err.println("Usage: java searchclient.DistributedSearch [-workers <local>] [-remote <remote>] [-port <port>] [-heap <size>] [-astar | -wastar [W] | -greedy]");
+            System.err.println("       with at least one worker, local or remote.");
+            System.exit(2);
+        }
+
+        System.err.println("DistributedSearch initializing. I am sending this using the error output stream.");
+        BufferedReader serverMessages = new BufferedReader(new InputStreamReader(System.in));
+        StringBuilder text = new StringBuilder();
+        String line = serverMessages.readLine();
+        while (line != null && !line.equals("")) {
+            text.append(line).append('\n');
+            line = serverMessages.readLine();
+        }
+        SearchClient client = null;
+        try {
+            client = Solver.parseLevel(text.toString());
+            // Fails here rather than in every worker.
+            heuristic(strategyArg, strategyParam, client);
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.exit(1);
+        }
+
+        int count = localWorkers + remoteWorkers;
+        ServerSocketChannel server = ServerSocketChannel.open();
+        server.bind(remoteWorkers > 0 ? new InetSocketAddress(port) : new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        int actualPort = ((InetSocketAddress) server.getLocalAddress()).getPort();
+        List<Process> processes = new ArrayList<>();
+        for (int w = 0; w < localWorkers; w++) {
+            List<String> command = new ArrayList<>();
+            command.add(ProcessHandle.current().info().command().orElse("java"));
+            if (heap != null) {
+                command.add("-Xmx" + heap);
+            }
+            command.addAll(Arrays.asList("-cp", System.getProperty("java.class.path"), "searchclient.DistributedSearch",
+                    "-worker", "-connect", "127.0.0.1:" + actualPort));
+            // Workers must not write to our standard output, which goes to the server.
+            processes.add(new ProcessBuilder(command).redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .redirectError(ProcessBuilder.Redirect.INHERIT).start());
+        }
+        if (remoteWorkers > 0) {
+            System.err.format("Waiting for %d remote workers on port %d.\n", remoteWorkers, actualPort);
+        }
+        Connection[] workers = new Connection[count];
+        for (int w = 0; w < count; w++) {
+            workers[w] = new Connection(server.accept());
+        }
+        server.close();
+
+        Coordinator coordinator = new Coordinator(client, text.toString(), strategyArg + (strategyParam != null ? " " + strategyParam : ""), workers);
+        System.err.format("Search starting with %d workers.\n", count);
+        List<Command> plan = null;
+        try {
+            plan = coordinator.solve();
+        } catch (IOException ex) {
+            System.err.println("Search failed: " + ex.getMessage());
+        }
+        coordinator.shutDown();
+        for (Process p : processes) {
+            if (!p.waitFor(2, java.util.concurrent.TimeUnit.SECONDS)) {
+                p.destroyForcibly();
+            }
+        }
+        System.err.println(coordinator.searchStatus());
+        if (plan == null) {
+            System.err.println("Unable to solve level.");
+            System.exit(0);
+        }
+        System.err.println("Found solution of length " + plan.size());
+
+        for (Command c : plan) {
+            String act = c.toString();
+            System.out.println(act);
+            String response = serverMessages.readLine();
+            if (response.contains("false")) {
+                System.err.format("Server responsed with %s to the inapplicable action: %s\n", response, act);
+                break;
+            }
+        }
+    }
+}
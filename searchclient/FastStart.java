@@ -0,0 +1,261 @@
+package searchclient;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/** FastStart cuts the fixed costs of a run, which dominate on small levels: starting the JVM and loading classes, and
+ * the distance table of the heuristic.
+ *
+ * -archive builds an AppCDS archive of the classes a run loads, by solving a level in a JVM started with
+ * -XX:ArchiveClassesAtExit; a JVM started with -XX:SharedArchiveFile then maps those classes in already parsed and
+ * verified. The JVM only archives classes from jar files, so the class directories of the class path are first packed
+ * into a jar next to the archive (searchclient.jar for searchclient.jsa), which the client must then run from.
+ * -distances writes the distance table of a level to a file (see Level.saveDistances), which SearchClient
+ * memory-maps with its -distances argument instead of running a breadth-first search from every cell:
+ *   $ java searchclient.FastStart -archive searchclient.jsa -level levels/SAD1.lvl
+ *   $ java searchclient.FastStart -distances levels/SAD1.lvl
+ *   $ java -jar server.jar -l levels/SAD1.lvl -c "java -XX:SharedArchiveFile=searchclient.jsa -cp searchclient.jar searchclient.SearchClient -astar -distances levels/SAD1.dist"
+ *
+ * -report measures what that gains: it runs SearchClient on each level in a new JVM, plainly, with the archive, with
+ * the distance file and with both, and prints the median wall time of each as CSV, along with the time to compute the
+ * table and to load it in this JVM:
+ *   $ java searchclient.FastStart -report -runs 5 levels/SAsimple*.lvl > startup.csv
+ */
+public class FastStart {
+    private static final String[] CONFIGURATIONS = { "plain", "cds", "distances", "cds+distances" };
+
+    private final String java = ProcessHandle.current().info().command().orElse("java");
+    private String classPath = System.getProperty("java.class.path");
+
+    /**
+     * Packs the directories on the class path into jar, and runs clients with jar in their place from then on.
+     */
+    public void packClasses(File jar) throws Exception {
+        List<String> entries = new ArrayList<>();
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+            for (String entry : this.classPath.split(File.pathSeparator)) {
+                Path root = new File(entry).toPath();
+                if (!Files.isDirectory(root)) {
+                    entries.add(entry);
+                    continue;
+                }
+                List<Path> files;
+                try (Stream<Path> walk = Files.walk(root)) {
+                    files = walk.filter(p -> p.toString().endsWith(".class")).sorted().collect(Collectors.toList());
+                }
+                for (Path file : files) {
+                    out.putNextEntry(new JarEntry(root.relativize(file).toString().replace(File.separatorChar, '/')));
+                    out.write(Files.readAllBytes(file));
+                    out.closeEntry();
+                }
+            }
+        }
+        entries.add(0, jar.getPath());
+        this.classPath = String.join(File.pathSeparator, entries);
+    }
+
+    // The jar that goes with an archive: searchclient.jsa gives searchclient.jar.
+    private static File jarFor(File archive) {
+        return withExtension(archive, ".jar");
+    }
+
+    // The command line that runs SearchClient, with the archive and distance file if they are given.
+    private List<String> command(File archive, String strategy, File distances) {
+        List<String> command = new ArrayList<>();
+        command.add(this.java);
+        if (archive != null) {
+            command.add("-XX:SharedArchiveFile=" + archive.getPath());
+            // Do not fall back to loading the classes quietly if the archive cannot be used.
+            command.add("-Xshare:on");
+        }
+        command.addAll(Arrays.asList("-cp", this.classPath, "searchclient.SearchClient", strategy));
+        if (distances != null) {
+            command.addAll(Arrays.asList("-distances", distances.getPath()));
+        }
+        return command;
+    }
+
+    /**
+     * Runs command as a client on level, accepting every action it sends, and returns the wall time in milliseconds
+     * from starting the JVM until it exits.
+     */
+    private static long run(List<String> command, String levelText) throws Exception {
+        long start = System.nanoTime();
+        Process client = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.DISCARD).start();
+        PrintStream toClient = new PrintStream(client.getOutputStream(), true, "UTF-8");
+        BufferedReader fromClient = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+        toClient.print(levelText.replace("\r", "").stripTrailing());
+        toClient.print("\n\n");
+        toClient.flush();
+        while (fromClient.readLine() != null) {
+            toClient.println("[true]");
+        }
+        if (client.waitFor() != 0) {
+            throw new IllegalStateException("Client failed: " + String.join(" ", command));
+        }
+        return (System.nanoTime() - start) / 1000000;
+    }
+
+    /**
+     * Builds the archive by solving level with strategy in a JVM that dumps the classes it loaded when it exits. The
+     * run loads a distance file as well, so that the classes doing that are in the archive too.
+     */
+    public void buildArchive(File archive, File level, String strategy) throws Exception {
+        this.packClasses(jarFor(archive));
+        File distances = File.createTempFile("searchclient", ".dist");
+        writeDistances(level, distances);
+        List<String> command = this.command(null, strategy, distances);
+        command.add(1, "-XX:ArchiveClassesAtExit=" + archive.getPath());
+        run(command, new String(Files.readAllBytes(level.toPath()), StandardCharsets.UTF_8));
+        distances.delete();
+        if (!archive.exists()) {
+            throw new IllegalStateException("The JVM did not write " + archive + "; it may not support dynamic archives.");
+        }
+    }
+
+    private static File withExtension(File file, String extension) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return new File(file.getParentFile(), (dot > 0 ? name.substring(0, dot) : name) + extension);
+    }
+
+    public static File writeDistances(File level, File out) throws Exception {
+        SearchClient client = Solver.parseLevel(new String(Files.readAllBytes(level.toPath()), StandardCharsets.UTF_8));
+        // Next to the level file by default: levels/SAD1.lvl gives levels/SAD1.dist.
+        File file = out != null ? out : withExtension(level, ".dist");
+        client.level.saveDistances(file);
+        return file;
+    }
+
+    private static long median(long[] times) {
+        long[] sorted = times.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    /**
+     * Prints the report described above for levels, building a temporary archive if archive is null.
+     */
+    public void report(List<File> levels, File archive, String strategy, int runs) throws Exception {
+        List<File> temporary = new ArrayList<>();
+        if (archive == null) {
+            archive = File.createTempFile("searchclient", ".jsa");
+            archive.delete();
+            temporary.add(archive);
+            temporary.add(jarFor(archive));
+            this.buildArchive(archive, levels.get(0), strategy);
+        } else {
+            // Every configuration runs from the jar the archive was built with, so that only the archive differs.
+            this.classPath = jarFor(archive).getPath();
+        }
+        System.out.println("level,cells,configuration,median_ms");
+        long[] totals = new long[CONFIGURATIONS.length];
+        for (File level : levels) {
+            String text = new String(Files.readAllBytes(level.toPath()), StandardCharsets.UTF_8);
+            File distances = File.createTempFile("searchclient", ".dist");
+            temporary.add(distances);
+
+            // The table itself, computed and then loaded in this JVM.
+            long start = System.nanoTime();
+            Level computed = Solver.parseLevel(text).level;
+            computed.distances();
+            long computeTime = (System.nanoTime() - start) / 1000;
+            computed.saveDistances(distances);
+            start = System.nanoTime();
+            boolean loaded = Solver.parseLevel(text).level.loadDistances(distances);
+            long loadTime = (System.nanoTime() - start) / 1000;
+            if (!loaded) {
+                throw new IllegalStateException("Could not load the distances just written for " + level);
+            }
+            System.out.format(Locale.ROOT, "%s,%d,table-computed,%.3f\n", level.getName(), computed.cells, computeTime / 1000.0);
+            System.out.format(Locale.ROOT, "%s,%d,table-loaded,%.3f\n", level.getName(), computed.cells, loadTime / 1000.0);
+
+            for (int c = 0; c < CONFIGURATIONS.length; c++) {
+                List<String> command = this.command(CONFIGURATIONS[c].startsWith("cds") ? archive : null, strategy,
+                        CONFIGURATIONS[c].endsWith("distances") ? distances : null);
+                run(command, text); // Not timed: brings the files into the OS cache.
+                long[] times = new long[runs];
+                for (int r = 0; r < runs; r++) {
+                    times[r] = run(command, text);
+                }
+                totals[c] += median(times);
+                System.out.format("%s,%d,%s,%d\n", level.getName(), computed.cells, CONFIGURATIONS[c], median(times));
+            }
+        }
+        for (int c = 0; c < CONFIGURATIONS.length; c++) {
+            System.out.format("# %-14s %6d ms over %d levels\n", CONFIGURATIONS[c], totals[c], levels.size());
+        }
+        for (File f : temporary) {
+            f.delete();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String mode = null;
+        File archive = null;
+        File level = null;
+        File out = null;
+        String strategy = "-astar";
+        int runs = 5;
+        List<File> levels = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-archive":
+                    mode = mode == null ? "archive" : mode;
+                    archive = new File(args[++i]);
+                    break;
+                case "-distances":
+                    mode = "distances";
+                    level = new File(args[++i]);
+                    break;
+                case "-report":
+                    mode = "report";
+                    break;
+                case "-level":
+                    level = new File(args[++i]);
+                    break;
+                case "-o":
+                    out = new File(args[++i]);
+                    break;
+                case "-strategy":
+                    strategy = args[++i];
+                    break;
+                case "-runs":
+                    runs = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    levels.add(new File(args[i]));
+            }
+        }
+
+        FastStart fastStart = new FastStart();
+        if ("archive".equals(mode) && level != null) {
+            fastStart.buildArchive(archive, level, strategy);
+            System.err.format("Wrote %s. Start the client with:\n  %s\n", archive,
+                    String.join(" ", fastStart.command(archive, strategy, null)));
+        } else if ("distances".equals(mode)) {
+            System.err.format("Wrote %s.\n", writeDistances(level, out));
+        } else if ("report".equals(mode) && !levels.isEmpty()) {
+            fastStart.report(levels, archive, strategy, runs);
+        } else {
+            System.err.println("Usage: java searchclient.FastStart -archive <file> -level <level> [-strategy <arg>]");
+            System.err.println("       java searchclient.FastStart -distances <level> [-o <file>]");
+            System.err.println("       java searchclient.FastStart -report [-archive <file>] [-strategy <arg>] [-runs <n>] <level>...");
+            System.exit(2);
+        }
+    }
+}
@@ -5,24 +5,24 @@ import java.util.*;
 import searchclient.NotImplementedException;
 
 public abstract class Heuristic implements Comparator<Node> {
-    char[][] goals;
-    int maxRow;
-    int maxCol;
-    int BIG_NUMBER_CONST = 100000000;
+    char[] goals;
+    Level level;
+    int cells;
+    int BIG_NUMBER_CONST = Level.UNREACHABLE;
 
     // Note: character is a goal represented by an lowercase letter, and the value is is a list of locations of that goal
-    // This stores a given goal (character) and all of the points at which that goal is found.
-    HashMap<Character, ArrayList<Point>> goalLocations;
+    // This stores a given goal (character) and all of the cells at which that goal is found.
+    HashMap<Character, ArrayList<Integer>> goalLocations;
 
-    /** pointDistances is a representation of how we are going to store the distances between points. We will have a grid that is the
-     * same size as the level. Then for each coordinate on the grid, there will be another grid that is the same size as the
-     * level grid.*/
+    /** pointDistances is a representation of how we are going to store the distances between points. For each cell of the
+     * level there is a block of the same size as the level, and the blocks are laid out one after another in a single
+     * array, so the distance between two cells is pointDistances[from * cells + to].*/
     /*        0 1 2
               0 X + +
               1 + + +
               2 + + +
-              In the X grid the following grid is stored; the value at each coordinate gives the distance between the '0-point'
-              and the given coordinate.
+              In the block of X the following distances are stored; the value at each coordinate gives the distance between
+              the '0-point' and the given coordinate.
               0 1 2
               1 2 3
               2 3 4
@@ -30,191 +30,135 @@ public abstract class Heuristic implements Comparator<Node> {
 
     // Declare pointDistances, which will store our 'map' of the level. Now we can reference the "Real" Distance between two points
     // without calculating each time.
-    int[][][][] pointDistances;
+    int[] pointDistances;
+
+    /** goalDistance[letter - 'a'] is the distance from every cell to the nearest goal of that letter, or null if the
+     * letter has no goals. It is what boxEntry and hBatch add up per box, so the goal lists do not have to be searched
+     * again for every node. */
+    int[][] goalDistance;
+
+    /** The box-to-goal part of h only depends on where the boxes are, and most successors are agent moves that leave
+     * the boxes untouched. boxCache maps a box layout to that part of h, plus the positions of the boxes that count
+     * for the agent term, so h for a known layout is a lookup and a short loop over the boxes. Nodes keep a reference
+     * to their entry (Node.boxEntry), so the map is only consulted once per node.
+     * It is bounded and evicts the least recently used layout. */
+    static final int BOX_CACHE_CAPACITY = 1 << 16;
+    private final LinkedHashMap<BoxLayout, BoxEntry> boxCache = new LinkedHashMap<BoxLayout, BoxEntry>(1024, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<BoxLayout, BoxEntry> eldest) {
+            return this.size() > BOX_CACHE_CAPACITY;
+        }
+    };
+
+    // Cache key: a box layout compared by content, using the hash the node already computed.
+    private static class BoxLayout {
+        final char[] boxes;
+        final int hash;
+
+        BoxLayout(Node n) {
+            this.boxes = n.boxes();
+            this.hash = n.boxHash();
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof BoxLayout)) {
+                return false;
+            }
+            BoxLayout other = (BoxLayout) obj;
+            // Move successors share their parent's array, so most hits are settled by the reference check.
+            return this.boxes == other.boxes || (this.hash == other.hash && Arrays.equals(this.boxes, other.boxes));
+        }
+    }
+
+    static class BoxEntry {
+        final Heuristic owner;
+        final int goalSum;
+        // Cells of the boxes that have a goal of their letter; the agent term is the distance to the closest of these.
+        final int[] boxCells;
+
+        BoxEntry(Heuristic owner, int goalSum, int[] boxCells) {
+            this.owner = owner;
+            this.goalSum = goalSum;
+            this.boxCells = boxCells;
+        }
+    }
+
 
     /**
      * Constructor for Heuristic
      */
-    public Heuristic(Node initialState, char[][] goals, boolean[][] walls) {
+    public Heuristic(Level level, char[] goals) {
         // Here's a chance to pre-process the static parts of the level.
         this.goals = goals;
-
-        this.maxRow = initialState.maxRow;
-        this.maxCol = initialState.maxCol;
+        this.level = level;
+        this.cells = level.cells;
 
         // Here we make hashmap of goals for efficient look up of nearest goal
         this.goalLocations = new HashMap<>();
 
-        // Instantiate pointDistances since it was only declared before the invocation of the Heuristic constructor.
-        this.pointDistances = new int[maxRow][maxCol][maxRow][maxCol];
+        // The "Real" distance between all cells, found by a BFS from every cell that is not a wall. Walls, and cells
+        // that cannot be reached, are at a distance of BIG_NUMBER_CONST. The level keeps the table once computed.
+        this.pointDistances = level.distances();
 
-        // Here we find the longest row length of the level, through the goals-representation.
-        int longestRowLength = 0;
-        for (int i = 0; i < goals.length; i++) {
-            if (goals[i].length > longestRowLength) {
-                longestRowLength = goals[i].length;
-            }
-        }
-
-        // Number of rows in goals
-        int rowCount = goals.length;
-        // Technically redundant but easier to read later code
-        int columnCount = longestRowLength;
-
-        /**
-         * When we store our point distances, we need to take walls into account. So, we will store a
-         *  'dummy' grid to as a wall to indicate that that particular coordinate is not to be used in
-         *  calculating the "Real" Distance.
-         */
-        // The 'dummy' wall, AKA a filler object if a point is a wall in the point distances array object
-        int[][] wallFiller = new int[rowCount][columnCount];
-        int WALL_INT_CONSTANT = BIG_NUMBER_CONST;
-
-        // Populate wall filler
-        for (int row = 0; row < rowCount; row++) {
-            for (int col = 0; col < columnCount; col++) {
-                wallFiller[row][col] = WALL_INT_CONSTANT;
-            }
-        }
-
-        // Loop through the nested goals array to find and store goal locations
-        //System.err.println("Max row is " + goals.length);
-        for (int row = 0; row < goals.length; row++) {
-            for (int col = 0; col < goals[row].length; col++) {
-                char currentChar = goals[row][col];
+        this.locateGoals();
+        this.computeGoalDistances();
+    }
 
-                // Determine the "Real" distance from one point to another for every point in the array
-                /***********************************************************************************/
+    /**
+     * Creates a heuristic for a different set of goals on the same level as base.
+     * The distance tables only depend on the walls, so they are shared rather than recomputed.
+     */
+    protected Heuristic(Heuristic base, char[] goals) {
+        this.goals = goals;
+        this.level = base.level;
+        this.cells = base.cells;
+        this.pointDistances = base.pointDistances;
+        this.goalLocations = new HashMap<>();
+        this.locateGoals();
+        this.computeGoalDistances();
+    }
 
-                // If current value is a wall, then add the wall filler to pointDistances.
-                if (walls[row][col]) {
-                    pointDistances[row][col] = wallFiller;
+    // Finds all the locations of goals and adds them to the hashmap tracking goal locations.
+    private void locateGoals() {
+        for (int cell = 0; cell < goals.length; cell++) {
+            char currentChar = goals[cell];
+            if (currentChar != '\u0000') {
+                ArrayList<Integer> currentLocationsOfGoal;
+                // If there are already locations of char listed, then find them
+                if (goalLocations.containsKey(currentChar)) {
+                    currentLocationsOfGoal = goalLocations.get(currentChar);
                 }
-
-                // If it is not a wall then do BFS to find distance from current point to
-                // all other non-wall points and store the results.
+                // If there are not locations of char found initialize a new array containing them
                 else {
-                    // Represents the grid that is the distance between current point and other points
-
-                    /** Start BFS from the current coordinate.
-                     *  Note that the first part of this code-chunk is not performing BFS.
-                     */
-                    // 1. First, we do a simple calculation from the 'beginning' of the grid, (0,0)
-                    Queue<PointNode> frontier = new LinkedList<>();
-                    boolean[][] frontierSet = new boolean[maxRow][maxCol];
-
-                    // keep track of points already visited
-                    boolean[][] visited = new boolean[maxRow][maxCol];
-
-                    // if point is not 0,0 we want to back trace already performed calculations
-                    if (row != 0 && col != 0) {
-                        for (int i = 0; i <= row; i++) {
-                            for (int j = 0; j < col; j++) {
-                                //if point is a wall add a filler max int
-                                if (pointDistances[i][j] == wallFiller) {
-                                    pointDistances[i][j][i][j] = WALL_INT_CONSTANT;
-                                }
-                                //otherwise see previously calculated values
-                                else {
-                                    pointDistances[i][j][i][j] = distanceBetweenTwoPoints(i, j, row, col);
-                                    visited[i][j] = true;
-                                }
-                            }
-                        }
-                    }
-
-                    // 2. Now, fill in the rest of the grid with BFS.
-                    frontier.add(new PointNode(row, col, -1));
-                    frontierSet[row][col] = true;
-                    while(!frontier.isEmpty()){
-                        PointNode currentPointNode = frontier.poll();
-                        int currentX = currentPointNode.getX();
-                        int currentY = currentPointNode.getY();
-                        Point currentPoint = new Point(currentX, currentY);
-                        frontierSet[row][col] = false;
-
-                        // Update grid
-                        // Check if current point is a wall - if it is add wall filler value
-                        if (walls[currentX][currentY]){
-                            pointDistances[row][col][currentX][currentY] = WALL_INT_CONSTANT;
-                        }
-                        /**
-                         * Here, if the current point is not a wall, we continue with the BFS algorithm.
-                         *   BFS will follow the 'children' of the current coordinate points.
-                         *   These are the points directly to the left, right, top, and bottom.
-                         */
-                        else {
-                            int currentDistance = currentPointNode.getPreviousDistance() + 1;
-                            pointDistances[row][col][currentX][currentY] = currentDistance;
-
-                            /* Add points around it to frontier if they aren't already visited or in frontier.
-                             * This will be in a 4-unit 'cross' around the current point. The coordinates directly
-                             * above, below, to the left, and to the right will be checked. */
-
-                            // See if point above is anything
-                            if (currentY > 0) {
-                                int x = currentX;
-                                int y = currentY-1;
-                                if(!visited[x][y] && !frontierSet[x][y]){
-                                    frontier.add(new PointNode(x, y, currentDistance));
-                                    frontierSet[x][y] = true;
-                                }
-                            }
-                            // See if point below is anything
-                            if (currentY < walls.length-2) {
-                                int x = currentX;
-                                int y = currentY+1;
-                                if(!visited[x][y] && !frontierSet[x][y]){
-                                    frontier.add(new PointNode(x, y, currentDistance));
-                                    frontierSet[x][y] = true;
-                                }
-                            }
-                            // See if point to the left is anything
-                            if (currentX > 0) {
-                                int x = currentX-1;
-                                int y = currentY;
-                                if(!visited[x][y] && !frontierSet[x][y]){
-                                    frontier.add(new PointNode(currentX-1, currentY, currentDistance));
-                                    frontierSet[x][y] = true;
-                                }
-                            }
-                            //see if point to the right is anything
-                            if (currentX < walls[0].length-2) {
-                                int x = currentX+1;
-                                int y = currentY;
-                                if(!visited[x][y] && !frontierSet[x][y]){
-                                    frontier.add(new PointNode(x, y, currentDistance));
-                                    frontierSet[x][y] = true;
-                                }
-                            }
-                        }
-                        // Mark the current point as visited
-                        visited[currentX][currentY] = true;
-                    }
+                    currentLocationsOfGoal = new ArrayList<>();
                 }
+                // Then add new location found to list of locations
+                currentLocationsOfGoal.add(cell);
+                // And add updated locations to hashmap
+                goalLocations.put(currentChar, currentLocationsOfGoal);
+            }
+        }
+    }
 
-                /***********************************************************************************/
-                //The following code-chunk is finding all the locations of goals and adding to
-                // the hashmap tracking goal locations.
-                /***********************************************************************************/
-                if (currentChar != '\u0000') {
-                    // Set array with location of point
-                    Point currentLocation = new Point(row, col);
-                    ArrayList<Point> currentLocationsOfGoal;
-                    // If there are already locations of char listed, then find them
-                    if (goalLocations.containsKey(currentChar)) {
-                        currentLocationsOfGoal = goalLocations.get(currentChar);
-                    }
-                    // If there are not locations of char found initialize a new array containing them
-                    else {
-                        currentLocationsOfGoal = new ArrayList<>();
-                    }
-                    // Then add new location found to list of locations
-                    currentLocationsOfGoal.add(currentLocation);
-                    // And add updated locations to hashmap
-                    goalLocations.put(currentChar, currentLocationsOfGoal);
+    private void computeGoalDistances() {
+        this.goalDistance = new int[26][];
+        for (Map.Entry<Character, ArrayList<Integer>> e : this.goalLocations.entrySet()) {
+            int[] distance = new int[cells];
+            Arrays.fill(distance, BIG_NUMBER_CONST);
+            for (int goal : e.getValue()) {
+                for (int cell = 0; cell < cells; cell++) {
+                    distance[cell] = Math.min(distance[cell], distanceBetweenTwoPoints(cell, goal));
                 }
             }
+            this.goalDistance[e.getKey() - 'a'] = distance;
         }
     }
 
@@ -223,63 +167,181 @@ public abstract class Heuristic implements Comparator<Node> {
         return (x1 - x2) + (y2 - y1);
     }
 
-    // Find the shortest "Real" Distance between a point and and another point.
-    public int distanceBetweenTwoPoints(int x1, int y1, int x2, int y2){
-        return pointDistances[x1][y1][x2][y2];
+    // Find the shortest "Real" Distance between a cell and and another cell.
+    public int distanceBetweenTwoPoints(int from, int to){
+        return pointDistances[from * cells + to];
     }
 
     public int h(Node n) {
-        // Track goal node and closest row
-        int returnSum = 0;
-        char[][] boxes = n.boxes;
+        // Nodes remember their value, since the frontier evaluates f on every comparison.
+        // Nodes are only shared between threads whose heuristics give the same h (see Portfolio; each Solver starts
+        // from its own copy of the initial state), so a race on the two fields can at worst store an identical value.
+        if (n.hOwner == this) {
+            return n.hValue;
+        }
+        BoxEntry entry = this.entryFor(n);
+        int value = entry.goalSum;
         int closestAgentBoxDistance = BIG_NUMBER_CONST;
-        for (int row = 0; row < n.maxRow; row++) {
-            for (int col = 0; col < n.maxCol; col++) {
-                char currentChar = Character.toLowerCase(boxes[row][col]);
-                //if current value is a box
-                if (currentChar != '\u0000') {
-                    if (goalLocations.containsKey(currentChar)) {
-                        //see if this box is closest to the agent and if so update closestAgentBoxDistance
-                        int distanceToAgent = distanceBetweenTwoPoints(row, col, n.agentRow, n.agentCol);
-                        //make sure closest box is not already on a node
-                        if (distanceToAgent < closestAgentBoxDistance) {
-                            closestAgentBoxDistance = distanceToAgent;
-                        }
-                        //find goal locations
-                        ArrayList<Point> currentGoalLocations = goalLocations.get(currentChar);
-                        int closestDistance = BIG_NUMBER_CONST;
-                        for (Point location : currentGoalLocations) {
-                            int goalRow = location.getX();
-                            int goalCol = location.getY();
-
-                            // Here, we use the "Real" Shortest Distance, instead of the Manhattan.
-                            int distance = distanceBetweenTwoPoints(row, col, goalRow, goalCol);
-                            if (distance < closestDistance) {
-                                closestDistance = distance;
-                            }
-                        }
-                        returnSum += closestDistance;
+        for (int box : entry.boxCells) {
+            //see if this box is closest to the agent and if so update closestAgentBoxDistance
+            int distanceToAgent = distanceBetweenTwoPoints(box, n.agent);
+            if (distanceToAgent < closestAgentBoxDistance) {
+                closestAgentBoxDistance = distanceToAgent;
+            }
+        }
+        if (closestAgentBoxDistance != BIG_NUMBER_CONST) {
+            value += closestAgentBoxDistance;
+        }
+        n.hValue = value;
+        n.hOwner = this;
+        return value;
+    }
+
+    /**
+     * Evaluates all successors of parent at once, storing the result on each node so later calls to h are lookups.
+     * Successors that moved a box get their box entry from the parent's by swapping the one box that moved, instead
+     * of a scan of the whole grid. The agent term is then computed per box layout: each box's block of distances is
+     * visited once and compared against the agent cells of all siblings sharing that layout.
+     */
+    public void hBatch(Node parent, List<Node> children) {
+        BoxEntry parentEntry = this.entryFor(parent);
+        int count = children.size();
+        BoxEntry[] entries = new BoxEntry[count];
+        for (int i = 0; i < count; i++) {
+            Node child = children.get(i);
+            if (child.hOwner == this) {
+                continue;
+            }
+            BoxEntry entry = child.boxEntry;
+            if (entry == null || entry.owner != this) {
+                // Macro actions return the last node of a chain, whose parent is not the expanded node.
+                entry = child.parent == parent ? this.successorEntry(parent, parentEntry, child) : this.entryFor(child);
+                child.boxEntry = entry;
+            }
+            entries[i] = entry;
+        }
+
+        int[] closest = new int[count];
+        for (int i = 0; i < count; i++) {
+            BoxEntry entry = entries[i];
+            if (entry == null) {
+                continue;
+            }
+            // Siblings with this layout: mostly all the moves, which share the parent's entry.
+            for (int j = i; j < count; j++) {
+                if (entries[j] == entry) {
+                    closest[j] = BIG_NUMBER_CONST;
+                }
+            }
+            for (int box : entry.boxCells) {
+                int block = box * cells;
+                for (int j = i; j < count; j++) {
+                    if (entries[j] == entry) {
+                        closest[j] = Math.min(closest[j], pointDistances[block + children.get(j).agent]);
                     }
                 }
             }
+            for (int j = i; j < count; j++) {
+                if (entries[j] == entry) {
+                    Node child = children.get(j);
+                    child.hValue = entry.goalSum + (closest[j] != BIG_NUMBER_CONST ? closest[j] : 0);
+                    child.hOwner = this;
+                    entries[j] = null;
+                }
+            }
         }
-        if (closestAgentBoxDistance != BIG_NUMBER_CONST) {
-            returnSum += closestAgentBoxDistance;
+    }
+
+    // The box entry of n: inherited, cached for its layout, or computed from scratch.
+    private BoxEntry entryFor(Node n) {
+        // The node keeps the entry once resolved, and move successors inherit it from their parent.
+        BoxEntry entry = n.boxEntry;
+        if (entry == null || entry.owner != this) {
+            BoxLayout layout = new BoxLayout(n);
+            entry = this.boxCache.get(layout);
+            if (entry == null) {
+                entry = this.boxEntry(n);
+                this.boxCache.put(layout, entry);
+            }
+            n.boxEntry = entry;
         }
+        return entry;
+    }
 
-        return returnSum;
+    // The box entry of a push or pull successor of parent, derived from the parent's by moving a single box.
+    private BoxEntry successorEntry(Node parent, BoxEntry parentEntry, Node child) {
+        Command c = child.action;
+        if (c.actionType == Command.Type.Move) {
+            return parentEntry;
+        }
+        if (!this.additive()) {
+            return this.entryFor(child);
+        }
+        int from = child.boxFrom;
+        int to = child.boxTo;
+
+        int[] distance = this.goalDistance[Character.toLowerCase(child.box) - 'a'];
+        if (distance == null) {
+            // A box without goals is not part of h.
+            return parentEntry;
+        }
+        int[] boxCells = parentEntry.boxCells.clone();
+        for (int i = 0; i < boxCells.length; i++) {
+            if (boxCells[i] == from) {
+                boxCells[i] = to;
+                break;
+            }
+        }
+        return new BoxEntry(this, parentEntry.goalSum - distance[from] + distance[to], boxCells);
+    }
+
+    // Whether the goal term is a sum over boxes, so that moving one box only changes that box's part of it.
+    boolean additive() {
+        return true;
+    }
+
+    // Computes the agent-independent part of h for the box layout of n.
+    BoxEntry boxEntry(Node n) {
+        int returnSum = 0;
+        char[] boxes = n.boxes();
+        int counted = 0;
+        int[] boxCells = new int[cells];
+        for (int cell = 0; cell < cells; cell++) {
+            char currentChar = Character.toLowerCase(boxes[cell]);
+            //if current value is a box with goals of its letter
+            if (currentChar != '\u0000' && goalDistance[currentChar - 'a'] != null) {
+                boxCells[counted++] = cell;
+                // Here, we use the "Real" Shortest Distance to the closest goal, instead of the Manhattan.
+                returnSum += goalDistance[currentChar - 'a'][cell];
+            }
+        }
+        return new BoxEntry(this, returnSum, Arrays.copyOf(boxCells, counted));
     }
 
     public abstract int f(Node n);
 
+    /**
+     * Returns a heuristic of the same kind for the given goals, sharing this heuristic's distance tables.
+     */
+    public abstract Heuristic withGoals(char[] goals);
+
     @Override
     public int compare(Node n1, Node n2) {
         return this.f(n1) - this.f(n2);
     }
 
     public static class AStar extends Heuristic {
-        public AStar(Node initialState, char[][] goals, boolean[][] walls) {
-            super(initialState, goals, walls);
+        public AStar(Level level, char[] goals) {
+            super(level, goals);
+        }
+
+        public AStar(Heuristic base, char[] goals) {
+            super(base, goals);
+        }
+
+        @Override
+        public Heuristic withGoals(char[] goals) {
+            return new AStar(this, goals);
         }
 
         @Override
@@ -296,11 +358,21 @@ public abstract class Heuristic implements Comparator<Node> {
     public static class WeightedAStar extends Heuristic {
         private int W;
 
-        public WeightedAStar(Node initialState, char[][] goals, boolean[][] walls, int W) {
-            super(initialState, goals, walls);
+        public WeightedAStar(Level level, char[] goals, int W) {
+            super(level, goals);
             this.W = W;
         }
 
+        public WeightedAStar(Heuristic base, char[] goals, int W) {
+            super(base, goals);
+            this.W = W;
+        }
+
+        @Override
+        public Heuristic withGoals(char[] goals) {
+            return new WeightedAStar(this, goals, this.W);
+        }
+
         @Override
         public int f(Node n) {
             return n.g() + this.W * this.h(n);
@@ -313,8 +385,17 @@ public abstract class Heuristic implements Comparator<Node> {
     }
 
     public static class Greedy extends Heuristic {
-        public Greedy(Node initialState, char[][] goals, boolean[][] walls) {
-            super(initialState, goals, walls);
+        public Greedy(Level level, char[] goals) {
+            super(level, goals);
+        }
+
+        public Greedy(Heuristic base, char[] goals) {
+            super(base, goals);
+        }
+
+        @Override
+        public Heuristic withGoals(char[] goals) {
+            return new Greedy(this, goals);
         }
 
         @Override
@@ -327,4 +408,142 @@ public abstract class Heuristic implements Comparator<Node> {
             return "Greedy evaluation";
         }
     }
+
+    /**
+     * Greedy evaluation by a matching of boxes to goals: for every letter, the smallest total distance over the ways
+     * of giving each goal a box of its own (found with the Hungarian method), instead of each box's distance to its
+     * closest goal, which lets several boxes count on the same goal. The agent term is the same as in h. Moving one
+     * box can change the whole matching, so box entries are computed per layout rather than derived from the parent's.
+     */
+    public static class Matching extends Heuristic {
+        public Matching(Level level, char[] goals) {
+            super(level, goals);
+        }
+
+        public Matching(Heuristic base, char[] goals) {
+            super(base, goals);
+        }
+
+        @Override
+        boolean additive() {
+            return false;
+        }
+
+        @Override
+        BoxEntry boxEntry(Node n) {
+            char[] boxes = n.boxes();
+            int[] boxCells = new int[cells];
+            int counted = 0;
+            long sum = 0;
+            for (Map.Entry<Character, ArrayList<Integer>> e : this.goalLocations.entrySet()) {
+                char letter = Character.toUpperCase(e.getKey());
+                int first = counted;
+                for (int cell = 0; cell < cells; cell++) {
+                    if (boxes[cell] == letter) {
+                        boxCells[counted++] = cell;
+                    }
+                }
+                sum += this.match(e.getValue(), boxCells, first, counted);
+            }
+            return new BoxEntry(this, (int) Math.min(sum, BIG_NUMBER_CONST), Arrays.copyOf(boxCells, counted));
+        }
+
+        // The cheapest assignment between goalCells and boxCells[from..to), each goal to its own box or, if there are
+        // fewer boxes, each box to its own goal.
+        private long match(List<Integer> goalCells, int[] boxCells, int from, int to) {
+            int goals = goalCells.size();
+            int boxes = to - from;
+            if (goals == 0 || boxes == 0) {
+                return 0;
+            }
+            boolean byGoal = goals <= boxes;
+            int rows = byGoal ? goals : boxes;
+            int cols = byGoal ? boxes : goals;
+            long[][] cost = new long[rows][cols];
+            for (int g = 0; g < goals; g++) {
+                for (int b = 0; b < boxes; b++) {
+                    long d = distanceBetweenTwoPoints(boxCells[from + b], goalCells.get(g));
+                    if (byGoal) {
+                        cost[g][b] = d;
+                    } else {
+                        cost[b][g] = d;
+                    }
+                }
+            }
+            return assignment(cost, rows, cols);
+        }
+
+        // Minimum total cost of giving every row its own column, for rows <= cols: the Hungarian method with potentials
+        // u and v, adding one row at a time along a shortest augmenting path, in O(rows^2 * cols).
+        private static long assignment(long[][] cost, int rows, int cols) {
+            long[] u = new long[rows + 1];
+            long[] v = new long[cols + 1];
+            // p[j]: the row assigned to column j, 1-based, or 0; way[j]: the previous column on the augmenting path.
+            int[] p = new int[cols + 1];
+            int[] way = new int[cols + 1];
+            long[] minv = new long[cols + 1];
+            boolean[] used = new boolean[cols + 1];
+            for (int i = 1; i <= rows; i++) {
+                p[0] = i;
+                int j0 = 0;
+                Arrays.fill(minv, Long.MAX_VALUE);
+                Arrays.fill(used, false);
+                do {
+                    used[j0] = true;
+                    int i0 = p[j0];
+                    long delta = Long.MAX_VALUE;
+                    int j1 = 0;
+                    for (int j = 1; j <= cols; j++) {
+                        if (!used[j]) {
+                            long cur = cost[i0 - 1][j - 1] - u[i0] - v[j];
+                            if (cur < minv[j]) {
+                                minv[j] = cur;
+                                way[j] = j0;
+                            }
+                            if (minv[j] < delta) {
+                                delta = minv[j];
+                                j1 = j;
+                            }
+                        }
+                    }
+                    for (int j = 0; j <= cols; j++) {
+                        if (used[j]) {
+                            u[p[j]] += delta;
+                            v[j] -= delta;
+                        } else {
+                            minv[j] -= delta;
+                        }
+                    }
+                    j0 = j1;
+                } while (p[j0] != 0);
+                do {
+                    int j1 = way[j0];
+                    p[j0] = p[j1];
+                    j0 = j1;
+                } while (j0 != 0);
+            }
+            long total = 0;
+            for (int j = 1; j <= cols; j++) {
+                if (p[j] != 0) {
+                    total += cost[p[j] - 1][j - 1];
+                }
+            }
+            return total;
+        }
+
+        @Override
+        public Heuristic withGoals(char[] goals) {
+            return new Matching(this, goals);
+        }
+
+        @Override
+        public int f(Node n) {
+            return this.h(n);
+        }
+
+        @Override
+        public String toString() {
+            return "Matching evaluation";
+        }
+    }
 }
@@ -0,0 +1,194 @@
+package searchclient;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/** IndexedHeap is a d-ary min-heap of nodes keyed by a long, which also knows where each state sits in the heap.
+ *
+ * The map from state to heap entry is what PriorityQueue lacks: it answers whether a state is in the heap, returns
+ * the node stored for it, and lets replace swap in a node for the same state reached by a cheaper path and move it
+ * to its new place in O(log n), instead of a linear remove or a duplicate entry. Entries keep their own position, so moving them
+ * around the heap does not touch the map. A 4-ary heap is shallower than a binary one and keeps the children of an
+ * entry next to each other, which suits the many inserts and few removals of a search frontier.
+ */
+public class IndexedHeap extends AbstractCollection<Node> {
+    private static final int D = 4;
+
+    private static class Entry {
+        Node node;
+        long key;
+        int index;
+
+        Entry(Node node, long key) {
+            this.node = node;
+            this.key = key;
+        }
+    }
+
+    private Entry[] heap = new Entry[64];
+    private int size = 0;
+    private final HashMap<Node, Entry> entries = new HashMap<>();
+
+    /**
+     * Adds n, which must not be in the heap yet, with the given key.
+     */
+    public void add(Node n, long key) {
+        Entry e = new Entry(n, key);
+        if (this.size == this.heap.length) {
+            this.heap = Arrays.copyOf(this.heap, this.size * 2);
+        }
+        e.index = this.size++;
+        this.heap[e.index] = e;
+        this.entries.put(n, e);
+        this.siftUp(e);
+    }
+
+    /**
+     * Removes and returns the node with the smallest key, or null if the heap is empty.
+     */
+    public Node poll() {
+        if (this.size == 0) {
+            return null;
+        }
+        Entry first = this.heap[0];
+        Entry last = this.heap[--this.size];
+        this.heap[this.size] = null;
+        if (this.size > 0) {
+            last.index = 0;
+            this.heap[0] = last;
+            this.siftDown(last);
+        }
+        this.entries.remove(first.node);
+        return first.node;
+    }
+
+    /**
+     * The smallest key in the heap; the heap must not be empty.
+     */
+    public long peekKey() {
+        return this.heap[0].key;
+    }
+
+    /**
+     * The node stored for the state of n, or null if the state is not in the heap.
+     */
+    public Node get(Node n) {
+        Entry e = this.entries.get(n);
+        return e == null ? null : e.node;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return this.entries.containsKey(o);
+    }
+
+    /**
+     * Puts n in place of the node stored for the same state, with a new key that may be smaller or larger than the
+     * old one.
+     */
+    public void replace(Node n, long key) {
+        // HashMap.put would keep the old node as the key, and with it the old node's ancestors.
+        Entry e = this.entries.remove(n);
+        e.node = n;
+        e.key = key;
+        this.entries.put(n, e);
+        this.siftDown(e);
+        this.siftUp(e);
+    }
+
+    /**
+     * Removes the node stored for the state of o, if there is one.
+     */
+    @Override
+    public boolean remove(Object o) {
+        Entry e = this.entries.remove(o);
+        if (e == null) {
+            return false;
+        }
+        Entry last = this.heap[--this.size];
+        this.heap[this.size] = null;
+        if (last != e) {
+            // The last entry fills the hole, and moves down or up from there.
+            last.index = e.index;
+            this.heap[last.index] = last;
+            this.siftDown(last);
+            this.siftUp(last);
+        }
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Iterates over the nodes in heap order, which is not sorted order.
+     */
+    @Override
+    public Iterator<Node> iterator() {
+        return new Iterator<Node>() {
+            private int i = 0;
+
+            @Override
+            public boolean hasNext() {
+                return this.i < IndexedHeap.this.size;
+            }
+
+            @Override
+            public Node next() {
+                return IndexedHeap.this.heap[this.i++].node;
+            }
+        };
+    }
+
+    private void siftUp(Entry e) {
+        int index = e.index;
+        while (index > 0) {
+            int parent = (index - 1) / D;
+            Entry p = this.heap[parent];
+            if (p.key <= e.key) {
+                break;
+            }
+            p.index = index;
+            this.heap[index] = p;
+            index = parent;
+        }
+        e.index = index;
+        this.heap[index] = e;
+    }
+
+    private void siftDown(Entry e) {
+        int index = e.index;
+        while (true) {
+            int first = index * D + 1;
+            if (first >= this.size) {
+                break;
+            }
+            // The smallest of the up to D children.
+            int smallest = first;
+            int end = Math.min(first + D, this.size);
+            for (int c = first + 1; c < end; c++) {
+                if (this.heap[c].key < this.heap[smallest].key) {
+                    smallest = c;
+                }
+            }
+            Entry child = this.heap[smallest];
+            if (child.key >= e.key) {
+                break;
+            }
+            child.index = index;
+            this.heap[index] = child;
+            index = smallest;
+        }
+        e.index = index;
+        this.heap[index] = e;
+    }
+}
@@ -0,0 +1,220 @@
+package searchclient;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import searchclient.Command.Dir;
+import searchclient.Command.Type;
+
+/** Level is the static part of a level (its walls and goals), stored cell by cell.
+ *
+ * Cells are numbered row by row: cell = row * maxCol + col. States, goals and distance tables are all flat arrays
+ * indexed by cell, so the search never has to go through an array of rows. Moving from a cell in a direction is a
+ * lookup in a precomputed neighbour table, which also takes care of the walls and the edges of the grid, and each cell
+ * has the list of commands that the walls around it allow, so expanding a node only tries those.
+ */
+public class Level {
+    public static final int DEFAULT_DELTA_INTERVAL = 16;
+    // The distance between cells that cannot reach each other; see distances.
+    public static final int UNREACHABLE = 100000000;
+    // First word of a distance file, see saveDistances.
+    private static final int DISTANCES_MAGIC = 0x53434431;
+
+    public final int maxRow;
+    public final int maxCol;
+    public final int cells;
+    public final boolean[] walls;
+    public final char[] goals;
+
+    // neighbours[cell * 4 + d.ordinal()]: the cell in direction d, or -1 if that is a wall or outside the grid.
+    private final int[] neighbours;
+    // The commands applicable to an agent on each cell when there are no boxes in the way.
+    private final Command[][] applicable;
+    // hashWeights[cell]: the factor of the box on cell in Arrays.hashCode of a box array, i.e. 31^(cells - 1 - cell).
+    private final int[] hashWeights;
+
+    // How states store their boxes; see useDeltaEncoding.
+    int deltaInterval = 0;
+    // The distance table, computed on first use; see distances.
+    private int[] distances = null;
+
+    public Level(boolean[][] walls, char[][] goals) {
+        this.maxRow = walls.length;
+        this.maxCol = walls[0].length;
+        this.cells = maxRow * maxCol;
+        this.walls = new boolean[cells];
+        this.goals = new char[cells];
+        for (int row = 0; row < maxRow; row++) {
+            for (int col = 0; col < maxCol; col++) {
+                this.walls[this.cell(row, col)] = walls[row][col];
+                this.goals[this.cell(row, col)] = goals[row][col];
+            }
+        }
+
+        this.neighbours = new int[cells * 4];
+        for (int cell = 0; cell < cells; cell++) {
+            for (Dir d : Dir.values()) {
+                int row = this.row(cell) + Command.dirToRowChange(d);
+                int col = this.col(cell) + Command.dirToColChange(d);
+                boolean free = row >= 0 && col >= 0 && row < maxRow && col < maxCol && !walls[row][col];
+                this.neighbours[cell * 4 + d.ordinal()] = free ? this.cell(row, col) : -1;
+            }
+        }
+
+        this.applicable = new Command[cells][];
+        ArrayList<Command> commands = new ArrayList<>();
+        for (int cell = 0; cell < cells; cell++) {
+            commands.clear();
+            for (Command c : Command.EVERY) {
+                int agentTo = this.neighbour(cell, c.dir1);
+                if (agentTo < 0) {
+                    continue;
+                }
+                if (c.actionType == Type.Push && this.neighbour(agentTo, c.dir2) < 0) {
+                    continue;
+                }
+                if (c.actionType == Type.Pull && this.neighbour(cell, c.dir2) < 0) {
+                    continue;
+                }
+                commands.add(c);
+            }
+            this.applicable[cell] = commands.toArray(new Command[0]);
+        }
+
+        this.hashWeights = new int[cells];
+        int weight = 1;
+        for (int cell = cells - 1; cell >= 0; cell--) {
+            this.hashWeights[cell] = weight;
+            weight *= 31;
+        }
+    }
+
+    /**
+     * Makes the push and pull successors of states of this level store only the box that moved, instead of a copy
+     * of the whole box array, taking a full copy after every interval box moves along a path so that rebuilding a
+     * layout replays fewer than interval moves. An interval of 0 or 1 copies the array on every box move, as without
+     * delta encoding. Only affects states generated after the call.
+     */
+    public void useDeltaEncoding(int interval) {
+        this.deltaInterval = interval;
+    }
+
+    /**
+     * Arrays.hashCode of a box array with hash boxHash after box has moved from cell from to cell to.
+     */
+    public int movedBoxHash(int boxHash, char box, int from, int to) {
+        return boxHash + box * (this.hashWeights[to] - this.hashWeights[from]);
+    }
+
+    public int cell(int row, int col) {
+        return row * maxCol + col;
+    }
+
+    public int row(int cell) {
+        return cell / maxCol;
+    }
+
+    public int col(int cell) {
+        return cell % maxCol;
+    }
+
+    /**
+     * The cell next to cell in direction d, or -1 if it is a wall or outside the level.
+     */
+    public int neighbour(int cell, Dir d) {
+        return this.neighbours[cell * 4 + d.ordinal()];
+    }
+
+    /**
+     * The length of the shortest path between every two cells, ignoring boxes: distances()[from * cells + to], or
+     * UNREACHABLE. It is computed by a breadth-first search from every free cell the first time it is asked for, and
+     * then kept, so that every heuristic on this level shares one table, also across searches (see SolverDaemon).
+     * Callers must not change it.
+     */
+    public synchronized int[] distances() {
+        if (this.distances != null) {
+            return this.distances;
+        }
+        int[] distances = new int[cells * cells];
+        Arrays.fill(distances, UNREACHABLE);
+        int[] frontier = new int[cells];
+        Dir[] dirs = Dir.values();
+        for (int from = 0; from < cells; from++) {
+            if (this.walls[from]) {
+                continue;
+            }
+            // The block of distances from this cell
+            int block = from * cells;
+            int head = 0;
+            int tail = 0;
+            frontier[tail++] = from;
+            distances[block + from] = 0;
+            while (head < tail) {
+                int current = frontier[head++];
+                int nextDistance = distances[block + current] + 1;
+                // The neighbour table already leaves out walls and the edges of the level.
+                for (Dir d : dirs) {
+                    int next = this.neighbour(current, d);
+                    if (next >= 0 && distances[block + next] == UNREACHABLE) {
+                        distances[block + next] = nextDistance;
+                        frontier[tail++] = next;
+                    }
+                }
+            }
+        }
+        this.distances = distances;
+        return distances;
+    }
+
+    /**
+     * Writes the distance table to file, after a header that identifies the walls it was computed for, so that
+     * loadDistances can skip the breadth-first searches on a later run. The file is little-endian, the byte order of
+     * the machines we run on, so that loading it is a plain copy.
+     */
+    public void saveDistances(File file) throws IOException {
+        int[] distances = this.distances();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            IntBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, 4L * (4 + distances.length))
+                    .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            out.put(DISTANCES_MAGIC).put(this.maxRow).put(this.maxCol).put(Arrays.hashCode(this.walls));
+            out.put(distances);
+        }
+    }
+
+    /**
+     * Takes the distance table from a file written by saveDistances, which is memory-mapped rather than read through a
+     * stream. Returns false, leaving the table to be computed as usual, if the file was written for other walls.
+     */
+    public synchronized boolean loadDistances(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = 4L * (4 + (long) cells * cells);
+            if (channel.size() != size) {
+                return false;
+            }
+            IntBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            if (in.get() != DISTANCES_MAGIC || in.get() != this.maxRow || in.get() != this.maxCol
+                    || in.get() != Arrays.hashCode(this.walls)) {
+                return false;
+            }
+            int[] distances = new int[cells * cells];
+            in.get(distances);
+            this.distances = distances;
+            return true;
+        }
+    }
+
+    /**
+     * The commands, in the order of Command.EVERY, that the walls allow for an agent on cell.
+     * Whether boxes are in the way is left to Node.childFor.
+     */
+    public Command[] applicableCommands(int cell) {
+        return this.applicable[cell];
+    }
+}
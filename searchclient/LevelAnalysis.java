@@ -0,0 +1,134 @@
+package searchclient;
+
+import searchclient.Command.Dir;
+
+/** LevelAnalysis holds facts about the static part of a level (walls and goals) that the search can exploit.
+ *
+ * Articulation points are free cells whose removal disconnects the free space: a box left on one splits the level.
+ * Tunnel cells are free cells inside a one-cell-wide straight corridor, i.e. with walls on both sides across the
+ * direction of travel. A box on a tunnel cell that is also an articulation point can only leave the corridor at
+ * either end, which is what lets Node.getExpandedNodes push or pull it through the whole corridor in one step.
+ */
+public class LevelAnalysis {
+    public final Level level;
+    public final char[] goals;
+
+    // All indexed by cell, see Level.
+    public final boolean[] articulation;
+    // tunnelVertical[cell]: walls to the west and east, so a box here can only travel north-south.
+    public final boolean[] tunnelVertical;
+    // tunnelHorizontal[cell]: walls to the north and south, so a box here can only travel west-east.
+    public final boolean[] tunnelHorizontal;
+
+    public LevelAnalysis(Level level, char[] goals) {
+        this.level = level;
+        this.goals = goals;
+
+        this.tunnelVertical = new boolean[level.cells];
+        this.tunnelHorizontal = new boolean[level.cells];
+        for (int cell = 0; cell < level.cells; cell++) {
+            if (level.walls[cell]) {
+                continue;
+            }
+            // Cells outside the grid count as walls.
+            this.tunnelVertical[cell] = level.neighbour(cell, Dir.W) < 0 && level.neighbour(cell, Dir.E) < 0;
+            this.tunnelHorizontal[cell] = level.neighbour(cell, Dir.N) < 0 && level.neighbour(cell, Dir.S) < 0;
+        }
+
+        this.articulation = new boolean[level.cells];
+        this.findArticulationPoints();
+    }
+
+    /**
+     * True if a box on cell moving in direction d is inside a corridor it cannot leave sideways,
+     * and leaving a box there would cut the level in two.
+     */
+    public boolean isTunnel(int cell, Dir d) {
+        if (!this.articulation[cell]) {
+            return false;
+        }
+        if (d == Dir.N || d == Dir.S) {
+            return this.tunnelVertical[cell];
+        }
+        return this.tunnelHorizontal[cell];
+    }
+
+    public int countArticulationPoints() {
+        int count = 0;
+        for (int cell = 0; cell < level.cells; cell++) {
+            if (this.articulation[cell]) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public int countTunnelCells() {
+        int count = 0;
+        for (int cell = 0; cell < level.cells; cell++) {
+            if (this.articulation[cell] && (this.tunnelVertical[cell] || this.tunnelHorizontal[cell])) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Tarjan's articulation point algorithm over the graph of free cells and their four neighbours.
+     * The depth-first search is iterative, since the free space of a level is easily deep enough to overflow the stack.
+     */
+    private void findArticulationPoints() {
+        int cells = level.cells;
+        Dir[] dirs = Dir.values();
+        int[] discovery = new int[cells];
+        int[] low = new int[cells];
+        int[] parent = new int[cells];
+        int[] nextDir = new int[cells];
+        int[] rootChildren = new int[cells];
+        int[] stack = new int[cells];
+        int time = 0;
+
+        for (int start = 0; start < cells; start++) {
+            if (discovery[start] != 0 || level.walls[start]) {
+                continue;
+            }
+            int top = 0;
+            stack[top++] = start;
+            discovery[start] = low[start] = ++time;
+            parent[start] = -1;
+
+            while (top > 0) {
+                int cell = stack[top - 1];
+                if (nextDir[cell] < 4) {
+                    int next = level.neighbour(cell, dirs[nextDir[cell]++]);
+                    if (next < 0) {
+                        continue;
+                    }
+                    if (discovery[next] == 0) {
+                        parent[next] = cell;
+                        discovery[next] = low[next] = ++time;
+                        stack[top++] = next;
+                    } else if (next != parent[cell]) {
+                        low[cell] = Math.min(low[cell], discovery[next]);
+                    }
+                } else {
+                    // All neighbours done: report back to the parent.
+                    top--;
+                    int p = parent[cell];
+                    if (p < 0) {
+                        continue;
+                    }
+                    low[p] = Math.min(low[p], low[cell]);
+                    if (parent[p] < 0) {
+                        rootChildren[p]++;
+                    } else if (low[cell] >= discovery[p]) {
+                        this.articulation[p] = true;
+                    }
+                }
+            }
+            if (rootChildren[start] > 1) {
+                this.articulation[start] = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package searchclient;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+import searchclient.Command.Dir;
+
+/** LevelFeatures are cheap measurements of a parsed level, used by StrategyRules to pick a strategy for it.
+ *
+ * They take a few breadth-first searches over the free cells, far less than the distance tables of the heuristic:
+ *   cells       free cells
+ *   boxes       boxes
+ *   goals       goal cells
+ *   letters     distinct goal letters
+ *   density     boxes per free cell
+ *   corridor    fraction of the free cells with at most two free neighbours
+ *   deadends    fraction of the free cells with a single free neighbour
+ *   boxdist     mean distance from a box to the closest goal of its letter, over boxes that have one
+ *   maxboxdist  largest such distance
+ *   agentdist   distance from the agent to the closest box
+ */
+public class LevelFeatures {
+    public static final String[] NAMES = { "cells", "boxes", "goals", "letters", "density", "corridor", "deadends",
+            "boxdist", "maxboxdist", "agentdist" };
+
+    private final double[] values = new double[NAMES.length];
+
+    public LevelFeatures(SearchClient client) {
+        Level level = client.level;
+        char[] boxes = client.initialState.boxes();
+        int free = 0;
+        int corridor = 0;
+        int deadEnds = 0;
+        int boxCount = 0;
+        int goalCount = 0;
+        boolean[] letters = new boolean[26];
+        for (int cell = 0; cell < level.cells; cell++) {
+            if (level.walls[cell]) {
+                continue;
+            }
+            free++;
+            int neighbours = 0;
+            for (Dir d : Dir.values()) {
+                if (level.neighbour(cell, d) >= 0) {
+                    neighbours++;
+                }
+            }
+            if (neighbours <= 2) {
+                corridor++;
+            }
+            if (neighbours == 1) {
+                deadEnds++;
+            }
+            if (boxes[cell] != 0) {
+                boxCount++;
+            }
+            if (client.goals[cell] != 0) {
+                goalCount++;
+                letters[client.goals[cell] - 'a'] = true;
+            }
+        }
+        int letterCount = 0;
+        for (boolean l : letters) {
+            if (l) {
+                letterCount++;
+            }
+        }
+
+        // One search from all goals of a letter at once gives every cell's distance to the closest of them.
+        int[][] goalDistance = new int[26][];
+        for (int letter = 0; letter < 26; letter++) {
+            if (letters[letter]) {
+                goalDistance[letter] = distances(level, client.goals, (char) ('a' + letter));
+            }
+        }
+        long sum = 0;
+        int counted = 0;
+        int max = 0;
+        for (int cell = 0; cell < level.cells; cell++) {
+            if (boxes[cell] != 0) {
+                int[] distance = goalDistance[Character.toLowerCase(boxes[cell]) - 'a'];
+                if (distance != null && distance[cell] != Integer.MAX_VALUE) {
+                    sum += distance[cell];
+                    counted++;
+                    max = Math.max(max, distance[cell]);
+                }
+            }
+        }
+        char[] boxCells = new char[level.cells];
+        for (int cell = 0; cell < level.cells; cell++) {
+            boxCells[cell] = boxes[cell] != 0 ? 'x' : 0;
+        }
+        int agentDistance = boxCount == 0 ? 0 : distances(level, boxCells, 'x')[client.initialState.agent];
+
+        this.set("cells", free);
+        this.set("boxes", boxCount);
+        this.set("goals", goalCount);
+        this.set("letters", letterCount);
+        this.set("density", free == 0 ? 0 : (double) boxCount / free);
+        this.set("corridor", free == 0 ? 0 : (double) corridor / free);
+        this.set("deadends", free == 0 ? 0 : (double) deadEnds / free);
+        this.set("boxdist", counted == 0 ? 0 : (double) sum / counted);
+        this.set("maxboxdist", max);
+        this.set("agentdist", agentDistance == Integer.MAX_VALUE ? 0 : agentDistance);
+    }
+
+    // Distance from every cell to the closest cell marked with mark, ignoring boxes; Integer.MAX_VALUE if unreachable.
+    private static int[] distances(Level level, char[] marks, char mark) {
+        int[] distance = new int[level.cells];
+        Arrays.fill(distance, Integer.MAX_VALUE);
+        int[] queue = new int[level.cells];
+        int head = 0;
+        int tail = 0;
+        for (int cell = 0; cell < level.cells; cell++) {
+            if (marks[cell] == mark) {
+                distance[cell] = 0;
+                queue[tail++] = cell;
+            }
+        }
+        while (head < tail) {
+            int current = queue[head++];
+            for (Dir d : Dir.values()) {
+                int next = level.neighbour(current, d);
+                if (next >= 0 && distance[next] == Integer.MAX_VALUE) {
+                    distance[next] = distance[current] + 1;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        return distance;
+    }
+
+    private static int index(String name) {
+        for (int i = 0; i < NAMES.length; i++) {
+            if (NAMES[i].equals(name)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown level feature: " + name);
+    }
+
+    private void set(String name, double value) {
+        this.values[index(name)] = value;
+    }
+
+    public double get(String name) {
+        return this.values[index(name)];
+    }
+
+    /**
+     * The values in the order of NAMES, separated by commas.
+     */
+    public String csv() {
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < NAMES.length; i++) {
+            s.append(i > 0 ? "," : "").append(format(this.values[i]));
+        }
+        return s.toString();
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value) ? String.valueOf((long) value) : String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < NAMES.length; i++) {
+            s.append(i > 0 ? ", " : "").append(NAMES[i]).append('=').append(format(this.values[i]));
+        }
+        return s.toString();
+    }
+}
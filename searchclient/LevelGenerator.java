@@ -0,0 +1,373 @@
+package searchclient;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/** LevelGenerator makes random single-agent levels of a given size, for charting how the strategies and heuristics
+ * scale with the level rather than with the handful of fixed puzzles in levels/.
+ *
+ * A level is generated from a seed, so the same parameters and seed always give the same level. Interior walls are
+ * placed at random as long as the free cells stay connected, the goals are spread over the free cells with their
+ * letters taken in turn from the first few letters of the alphabet, and every goal starts with a box of its letter on
+ * it. The boxes are then scattered by a random walk of the agent, using the same moves, pushes and pulls as the
+ * search (Node.childFor). Every push can be undone by a pull and the other way around, so the walk can be played
+ * backwards, and a generated level is always solvable.
+ *
+ * Run it to print a level, or with -report to solve a sweep of level sizes in this JVM and print a table of
+ * expansions, time and peak heap per level, followed by a chart of each against the size:
+ *   $ java searchclient.LevelGenerator -size 12x20 -boxes 4 -letters 2 -walls 0.2 -seed 7 > levels/generated.lvl
+ *   $ java searchclient.LevelGenerator -report -sizes 6,8,10,12 -boxes 2 -strategy astar -seeds 3 > scaling.csv
+ */
+public class LevelGenerator {
+    // Length of the random walk that scatters the boxes, per free cell.
+    private static final int SCRAMBLE_STEPS_PER_CELL = 20;
+    // Steps added to the walk, at most, until no box or the agent hides a goal.
+    private static final int MAX_EXTRA_STEPS = 100000;
+    private static final int CHART_WIDTH = 50;
+
+    private final int rows;
+    private final int cols;
+    private final int boxes;
+    private final int letters;
+    private final double wallDensity;
+
+    /**
+     * A generator of rows by cols levels, including the outer walls, with the given number of boxes and goals using
+     * the first letters letters, and about wallDensity of the interior cells turned into walls.
+     */
+    public LevelGenerator(int rows, int cols, int boxes, int letters, double wallDensity) {
+        if (rows < 3 || cols < 3) {
+            throw new IllegalArgumentException("A level needs at least 3 rows and 3 columns.");
+        }
+        if (letters < 1 || letters > 26) {
+            throw new IllegalArgumentException("The number of letters must be between 1 and 26.");
+        }
+        if (wallDensity < 0 || wallDensity >= 1) {
+            throw new IllegalArgumentException("The wall density must be at least 0 and less than 1.");
+        }
+        // The agent needs a cell, and it takes some room to get boxes off the goals.
+        if (boxes < 1 || 2 * boxes + 2 > (rows - 2) * (cols - 2)) {
+            throw new IllegalArgumentException("Between 1 and " + (((rows - 2) * (cols - 2) - 2) / 2) + " boxes fit in a "
+                    + rows + "x" + cols + " level.");
+        }
+        this.rows = rows;
+        this.cols = cols;
+        this.boxes = boxes;
+        this.letters = letters;
+        this.wallDensity = wallDensity;
+    }
+
+    /**
+     * Returns the text of the level for seed, in the format of the files in levels/ and without a trailing newline.
+     */
+    public String generate(long seed) {
+        Random rnd = new Random(seed);
+        boolean[][] walls = this.walls(rnd);
+
+        List<int[]> free = new ArrayList<>();
+        for (int row = 0; row < this.rows; row++) {
+            for (int col = 0; col < this.cols; col++) {
+                if (!walls[row][col]) {
+                    free.add(new int[] { row, col });
+                }
+            }
+        }
+        if (2 * this.boxes + 2 > free.size()) {
+            throw new IllegalArgumentException("Too many walls to fit " + this.boxes + " boxes; lower the wall density.");
+        }
+        Collections.shuffle(free, rnd);
+
+        char[][] goals = new char[this.rows][this.cols];
+        for (int i = 0; i < this.boxes; i++) {
+            int[] cell = free.get(i);
+            goals[cell[0]][cell[1]] = (char) ('a' + i % this.letters);
+        }
+        Level level = new Level(walls, goals);
+        Node n = new Node(null, level);
+        for (int cell = 0; cell < level.cells; cell++) {
+            if (level.goals[cell] != 0) {
+                n.boxes[cell] = Character.toUpperCase(level.goals[cell]);
+            }
+        }
+        n.agent = level.cell(free.get(this.boxes)[0], free.get(this.boxes)[1]);
+
+        // Walk until the boxes are scattered and none of them, nor the agent, is on a goal: a cell of a level file
+        // shows a goal or what stands on it, not both.
+        int steps = SCRAMBLE_STEPS_PER_CELL * free.size();
+        for (int step = 0; step < steps || hidesGoal(n); step++) {
+            if (step == steps + MAX_EXTRA_STEPS) {
+                throw new IllegalStateException("Could not move every box off the goals; use fewer boxes or walls.");
+            }
+            n = randomSuccessor(n, rnd);
+        }
+
+        StringBuilder s = new StringBuilder();
+        for (int row = 0; row < this.rows; row++) {
+            if (row > 0) {
+                s.append('\n');
+            }
+            for (int col = 0; col < this.cols; col++) {
+                int cell = level.cell(row, col);
+                if (walls[row][col]) {
+                    s.append('+');
+                } else if (cell == n.agent) {
+                    s.append('0');
+                } else if (n.boxes()[cell] != 0) {
+                    s.append(n.boxes()[cell]);
+                } else if (level.goals[cell] != 0) {
+                    s.append(level.goals[cell]);
+                } else {
+                    s.append(' ');
+                }
+            }
+        }
+        return s.toString();
+    }
+
+    // The outer walls, and interior walls placed at random cells where they do not cut the free cells in two.
+    private boolean[][] walls(Random rnd) {
+        boolean[][] walls = new boolean[this.rows][this.cols];
+        List<int[]> interior = new ArrayList<>();
+        for (int row = 0; row < this.rows; row++) {
+            for (int col = 0; col < this.cols; col++) {
+                if (row == 0 || col == 0 || row == this.rows - 1 || col == this.cols - 1) {
+                    walls[row][col] = true;
+                } else {
+                    interior.add(new int[] { row, col });
+                }
+            }
+        }
+        Collections.shuffle(interior, rnd);
+        int target = (int) Math.round(this.wallDensity * interior.size());
+        int placed = 0;
+        int freeCells = interior.size();
+        for (int[] cell : interior) {
+            if (placed == target) {
+                break;
+            }
+            walls[cell[0]][cell[1]] = true;
+            if (countReachable(walls, freeCells - 1) == freeCells - 1) {
+                placed++;
+                freeCells--;
+            } else {
+                walls[cell[0]][cell[1]] = false;
+            }
+        }
+        return walls;
+    }
+
+    // The number of free cells reachable from the first one, out of freeCells.
+    private static int countReachable(boolean[][] walls, int freeCells) {
+        int rows = walls.length;
+        int cols = walls[0].length;
+        boolean[][] seen = new boolean[rows][cols];
+        ArrayDeque<int[]> queue = new ArrayDeque<>();
+        for (int row = 0; row < rows && queue.isEmpty(); row++) {
+            for (int col = 0; col < cols; col++) {
+                if (!walls[row][col]) {
+                    seen[row][col] = true;
+                    queue.add(new int[] { row, col });
+                    break;
+                }
+            }
+        }
+        int count = 0;
+        while (!queue.isEmpty()) {
+            int[] cell = queue.poll();
+            count++;
+            for (Command.Dir d : Command.Dir.values()) {
+                int row = cell[0] + Command.dirToRowChange(d);
+                int col = cell[1] + Command.dirToColChange(d);
+                if (!walls[row][col] && !seen[row][col]) {
+                    seen[row][col] = true;
+                    queue.add(new int[] { row, col });
+                }
+            }
+        }
+        return count;
+    }
+
+    private static boolean hidesGoal(Node n) {
+        char[] goals = n.level.goals;
+        char[] boxes = n.boxes();
+        if (goals[n.agent] != 0) {
+            return true;
+        }
+        for (int cell = 0; cell < goals.length; cell++) {
+            if (goals[cell] != 0 && boxes[cell] != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // A successor of n by a random applicable command, detached from n so the walk does not keep its whole path.
+    private static Node randomSuccessor(Node n, Random rnd) {
+        Command[] commands = n.level.applicableCommands(n.agent);
+        while (true) {
+            Node child = n.childFor(commands[rnd.nextInt(commands.length)]);
+            if (child != null) {
+                child.parent = null;
+                return child;
+            }
+        }
+    }
+
+    /**
+     * Solves a level given as text in this JVM with the strategy of the command-line argument strategyArg (and
+     * strategyParam, which may be null), stopping it after timeLimit seconds. Returns the comma-separated outcome
+     * (solved, timeout, unsolvable or memory), plan length, expanded and generated nodes, time in ms and peak heap in MB.
+     */
+    static String solve(String text, String strategyArg, String strategyParam, int timeLimit) throws Exception {
+        SearchClient client = new SearchClient(new BufferedReader(new StringReader(text + "\n\n")));
+        Strategy strategy = SearchClient.chooseStrategy(strategyArg, strategyParam, client);
+        Thread watchdog = new Thread(() -> {
+            try {
+                Thread.sleep(timeLimit * 1000L);
+                strategy.cancel();
+            } catch (InterruptedException ex) {
+                // Finished in time.
+            }
+        }, "LevelGenerator-watchdog");
+        watchdog.setDaemon(true);
+
+        List<MemoryPoolMXBean> heap = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                heap.add(pool);
+            }
+        }
+        System.gc();
+        for (MemoryPoolMXBean pool : heap) {
+            pool.resetPeakUsage();
+        }
+
+        long start = System.nanoTime();
+        Node goal = null;
+        String outcome;
+        watchdog.start();
+        try {
+            goal = client.Search(strategy, client.initialState, client.goals, 0);
+            outcome = goal != null ? "solved" : strategy.isCancelled() ? "timeout" : "unsolvable";
+        } catch (OutOfMemoryError ex) {
+            outcome = "memory";
+        } finally {
+            watchdog.interrupt();
+        }
+        long time = (System.nanoTime() - start) / 1000000;
+
+        long peak = 0;
+        for (MemoryPoolMXBean pool : heap) {
+            peak += pool.getPeakUsage().getUsed();
+        }
+        return String.format(Locale.ROOT, "%s,%d,%d,%d,%d,%.1f", outcome, goal == null ? 0 : goal.g(), strategy.countExplored(),
+                strategy.countExplored() + strategy.countFrontier(), time, peak / (1024.0 * 1024.0));
+    }
+
+    // Prints, as comment lines, a bar per size with the mean of column of the report rows of that size, on a log scale.
+    private static void chart(String title, Map<String, List<String[]>> bySize, int column) {
+        Map<String, Double> means = new LinkedHashMap<>();
+        double max = 1;
+        for (Map.Entry<String, List<String[]>> e : bySize.entrySet()) {
+            double sum = 0;
+            for (String[] row : e.getValue()) {
+                sum += Double.parseDouble(row[column]);
+            }
+            double mean = sum / e.getValue().size();
+            means.put(e.getKey(), mean);
+            max = Math.max(max, mean);
+        }
+        System.out.format("# %s against size (log scale)\n", title);
+        for (Map.Entry<String, Double> e : means.entrySet()) {
+            int width = (int) Math.round(CHART_WIDTH * Math.log1p(e.getValue()) / Math.log1p(max));
+            System.out.format("# %9s |%-" + CHART_WIDTH + "s %,.1f\n", e.getKey(), "#".repeat(width), e.getValue());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rows = 10;
+        int cols = 10;
+        int boxes = 2;
+        int letters = 1;
+        double walls = 0.15;
+        long seed = 1;
+        boolean report = false;
+        String sizes = "6,8,10,12,14,16";
+        String strategy = "astar";
+        int seeds = 3;
+        int timeLimit = 60;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i].toLowerCase()) {
+                case "-size":
+                    String[] size = args[++i].toLowerCase().split("x");
+                    rows = Integer.parseInt(size[0]);
+                    cols = Integer.parseInt(size[size.length - 1]);
+                    break;
+                case "-boxes":
+                    boxes = Integer.parseInt(args[++i]);
+                    break;
+                case "-letters":
+                    letters = Integer.parseInt(args[++i]);
+                    break;
+                case "-walls":
+                    walls = Double.parseDouble(args[++i]);
+                    break;
+                case "-seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                case "-report":
+                    report = true;
+                    break;
+                case "-sizes":
+                    sizes = args[++i];
+                    break;
+                case "-strategy":
+                    strategy = args[++i].toLowerCase().replaceFirst("^-", "");
+                    break;
+                case "-seeds":
+                    seeds = Integer.parseInt(args[++i]);
+                    break;
+                case "-timeout":
+                    timeLimit = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    System.err.println("Unknown argument: " + args[i]);
+                    System.exit(1);
+            }
+        }
+
+        if (!report) {
+            System.out.println(new LevelGenerator(rows, cols, boxes, letters, walls).generate(seed));
+            return;
+        }
+
+        // Square levels of each size, several seeds each; the search prints its progress on stderr as usual.
+        System.out.println("rows,cols,boxes,letters,walls,seed,outcome,plan,expanded,generated,time_ms,peak_mb");
+        Map<String, List<String[]>> bySize = new LinkedHashMap<>();
+        for (String s : sizes.split(",")) {
+            int n = Integer.parseInt(s.trim());
+            LevelGenerator generator = new LevelGenerator(n, n, boxes, letters, walls);
+            List<String[]> results = new ArrayList<>();
+            for (long levelSeed = seed; levelSeed < seed + seeds; levelSeed++) {
+                String result = solve(generator.generate(levelSeed), "-" + strategy, null, timeLimit);
+                System.out.format(Locale.ROOT, "%d,%d,%d,%d,%.2f,%d,%s\n", n, n, boxes, letters, walls, levelSeed, result);
+                results.add(result.split(","));
+            }
+            bySize.put(n + "x" + n, results);
+        }
+        chart("Expanded nodes", bySize, 2);
+        chart("Time (ms)", bySize, 4);
+        chart("Peak heap (MB)", bySize, 5);
+    }
+}
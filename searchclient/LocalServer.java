@@ -0,0 +1,161 @@
+package searchclient;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** LocalServer stands in for server.jar on single-agent levels, without the GUI and with no delay between actions.
+ *
+ * It starts the client command, sends it the level, and answers every action line the client writes with [true] or
+ * [false], the way the server does, applying the action with Node.childFor (see PlanValidator). The client's
+ * standard error is passed through. The run ends when the level is solved, the client exits or the time limit has
+ * passed; LocalServer then reports whether the level was solved and exits with status 0 if it was:
+ *   $ java searchclient.LocalServer -l levels/SAD1.lvl -c "java searchclient.SearchClient -astar" -t 300
+ * Clients that stream their actions (SearchClient -pipeline) work too, as every line is answered as soon as it is read.
+ */
+public class LocalServer {
+    private final PlanValidator validator;
+    private final String levelText;
+
+    private Node state;
+    private int actions = 0;
+    private int rejected = 0;
+    private boolean solved = false;
+
+    public LocalServer(File levelFile) throws Exception {
+        this.levelText = new String(Files.readAllBytes(levelFile.toPath()), StandardCharsets.UTF_8);
+        this.validator = PlanValidator.forLevel(this.levelText);
+        this.state = this.validator.initialState();
+    }
+
+    /**
+     * Answers one line from the client: applies it to the current state if it is an applicable action.
+     */
+    public boolean apply(String line) {
+        this.actions++;
+        Command c = Command.parse(line);
+        Node next = c == null ? null : this.state.childFor(c);
+        if (next == null) {
+            this.rejected++;
+            return false;
+        }
+        next.parent = null;
+        this.state = next;
+        if (!this.solved && next.isGoalState(this.validator.goals())) {
+            this.solved = true;
+            System.err.format("Level solved after %d actions.\n", this.actions);
+        }
+        return true;
+    }
+
+    /**
+     * Runs the client command against the level until it is solved, the client exits or timeLimit seconds have passed.
+     * Returns whether the level was solved.
+     */
+    public boolean run(List<String> command, int timeLimit) throws IOException, InterruptedException {
+        long start = System.currentTimeMillis();
+        Process client = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        Thread timer = new Thread(() -> {
+            try {
+                if (!client.waitFor(timeLimit, TimeUnit.SECONDS)) {
+                    System.err.format("Client did not finish within %d seconds, stopping it.\n", timeLimit);
+                    client.destroyForcibly();
+                }
+            } catch (InterruptedException ex) {
+                // The client finished.
+            }
+        }, "LocalServer-timer");
+        timer.setDaemon(true);
+        timer.start();
+
+        PrintStream toClient = new PrintStream(client.getOutputStream(), false, "UTF-8");
+        BufferedReader fromClient = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+        // The level, then the empty line that ends it.
+        toClient.print(this.levelText.replace("\r", ""));
+        toClient.print(this.levelText.endsWith("\n") ? "\n" : "\n\n");
+        toClient.flush();
+
+        String line;
+        while ((line = fromClient.readLine()) != null) {
+            toClient.println(this.apply(line) ? "[true]" : "[false]");
+            // Answer at once, unless more actions are already waiting to be read.
+            if (!fromClient.ready()) {
+                toClient.flush();
+            }
+            // Like the server, end the run as soon as the level is solved.
+            if (this.solved) {
+                toClient.flush();
+                client.destroy();
+                break;
+            }
+        }
+        client.waitFor();
+        timer.interrupt();
+
+        System.err.format("%s after %d actions (%d rejected) in %3.2f s.\n", this.solved ? "Success: solved" : "Failure: not solved",
+                this.actions, this.rejected, (System.currentTimeMillis() - start) / 1000f);
+        return this.solved;
+    }
+
+    // Splits a command line on whitespace, keeping double-quoted parts together.
+    private static List<String> split(String command) {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        boolean quoted = false;
+        boolean inWord = false;
+        for (char ch : command.toCharArray()) {
+            if (ch == '"') {
+                quoted = !quoted;
+                inWord = true;
+            } else if (Character.isWhitespace(ch) && !quoted) {
+                if (inWord) {
+                    words.add(word.toString());
+                    word.setLength(0);
+                    inWord = false;
+                }
+            } else {
+                word.append(ch);
+                inWord = true;
+            }
+        }
+        if (inWord) {
+            words.add(word.toString());
+        }
+        return words;
+    }
+
+    public static void main(String[] args) throws Exception {
+        File level = null;
+        String command = null;
+        int timeLimit = 300;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-l":
+                    level = new File(args[++i]);
+                    break;
+                case "-c":
+                    command = args[++i];
+                    break;
+                case "-t":
+                    timeLimit = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    System.err.println("Unknown argument: " + args[i]);
+                    System.exit(2);
+            }
+        }
+        if (level == null || command == null) {
+            System.err.println("Usage: java searchclient.LocalServer -l <level> -c <client command> [-t <seconds>]");
+            System.exit(2);
+        }
+        boolean solved = new LocalServer(level).run(split(command), timeLimit);
+        System.exit(solved ? 0 : 1);
+    }
+}
@@ -0,0 +1,238 @@
+package searchclient;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import searchclient.Heuristic.AStar;
+
+/** NestedMonteCarlo solves a level with nested Monte Carlo search: it plays out random action sequences instead of
+ * keeping a frontier, so its memory only grows with the length of the sequences.
+ *
+ * A playout (level 0) applies random actions until the goals are met, no new state is reachable or the playout is
+ * too long. The actions are drawn with the heuristic as policy: a successor with h larger by d than the best one is
+ * e^d times less likely to be picked. A search of level k walks from the start: at every state it runs a level k-1
+ * search from each successor, and moves on along the best sequence found so far, in any of those searches. A
+ * sequence that reaches the goals beats one that does not, and among those the shorter one wins; otherwise the one
+ * ending at the lowest h is best.
+ *
+ * One worker per CPU core repeats the top-level search with its own random generator and its own heuristic, sharing
+ * the distance tables as in Portfolio, until one of them finds a plan, the time limit passes or the search is
+ * cancelled. Random playouts cannot tell an unsolvable level from a hard one, so the time limit is what ends the
+ * search on a level without a plan. Plans are not optimal.
+ */
+public class NestedMonteCarlo {
+    public static final int DEFAULT_LEVEL = 1;
+    public static final int DEFAULT_TIME_LIMIT = 60;
+    // A playout gives up after this many actions per cell of the level.
+    private static final int PLAYOUT_LENGTH_PER_CELL = 2;
+    private static final long UNSOLVED = 1L << 40;
+
+    private final SearchClient client;
+    private final int nesting;
+    private final int workers;
+    private final int maxLength;
+    private final Heuristic base;
+    private final long deadline;
+
+    private volatile Node goal = null;
+    private volatile boolean cancelled = false;
+    private final AtomicLong playouts = new AtomicLong();
+    private final AtomicLong iterations = new AtomicLong();
+    private final long startTime = System.currentTimeMillis();
+
+    public NestedMonteCarlo(SearchClient client, int nesting) {
+        this(client, nesting, DEFAULT_TIME_LIMIT);
+    }
+
+    /**
+     * A search that gives up after timeLimit seconds.
+     */
+    public NestedMonteCarlo(SearchClient client, int nesting, int timeLimit) {
+        this.client = client;
+        this.nesting = nesting;
+        this.workers = Runtime.getRuntime().availableProcessors();
+        this.maxLength = PLAYOUT_LENGTH_PER_CELL * client.level.cells;
+        this.base = new AStar(client.level, client.goals);
+        this.deadline = this.startTime + timeLimit * 1000L;
+    }
+
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    // Whether the workers should stop: a plan has been found, or the search was cancelled or has run out of time.
+    private boolean stopped() {
+        return this.goal != null || this.cancelled || System.currentTimeMillis() >= this.deadline;
+    }
+
+    // A sequence of actions from the start, given by the node it ends in, and its score; lower is better.
+    private static class Sequence {
+        final Node end;
+        final long score;
+
+        Sequence(Node end, long score) {
+            this.end = end;
+            this.score = score;
+        }
+    }
+
+    /**
+     * The state of one worker. Only the worker's thread touches it, or the nodes it creates.
+     */
+    private class Worker {
+        final Random rnd;
+        final Heuristic heuristic;
+
+        Worker(long seed) {
+            this.rnd = new Random(seed);
+            this.heuristic = new AStar(base, client.goals);
+        }
+
+        long score(Node n) {
+            return n.isGoalState(client.goals) ? n.g() : UNSOLVED + this.heuristic.h(n);
+        }
+
+        // The successors of n that are not in visited, evaluated by the heuristic.
+        List<Node> successors(Node n, HashSet<Node> visited) {
+            Command[] commands = n.level.applicableCommands(n.agent);
+            List<Node> children = new ArrayList<>(commands.length);
+            for (Command c : commands) {
+                Node child = n.childFor(c);
+                if (child != null && !visited.contains(child)) {
+                    children.add(child);
+                }
+            }
+            this.heuristic.hBatch(n, children);
+            return children;
+        }
+
+        Sequence playout(Node start, HashSet<Node> path) {
+            playouts.incrementAndGet();
+            HashSet<Node> visited = new HashSet<>(path);
+            Node n = start;
+            visited.add(n);
+            double[] weights = new double[Command.EVERY.length];
+            while (n.g() < maxLength && !n.isGoalState(client.goals)) {
+                List<Node> children = this.successors(n, visited);
+                if (children.isEmpty()) {
+                    break;
+                }
+                int best = Integer.MAX_VALUE;
+                for (Node child : children) {
+                    best = Math.min(best, this.heuristic.h(child));
+                }
+                double total = 0;
+                for (int i = 0; i < children.size(); i++) {
+                    weights[i] = Math.exp(best - this.heuristic.h(children.get(i)));
+                    total += weights[i];
+                }
+                double r = this.rnd.nextDouble() * total;
+                int pick = 0;
+                while (pick < children.size() - 1 && (r -= weights[pick]) > 0) {
+                    pick++;
+                }
+                n = children.get(pick);
+                visited.add(n);
+            }
+            return new Sequence(n, this.score(n));
+        }
+
+        // Nested search of the given level from start; path holds the states leading to start, which are not revisited.
+        Sequence search(Node start, int level, HashSet<Node> path) {
+            if (level == 0) {
+                return this.playout(start, path);
+            }
+            HashSet<Node> followed = new HashSet<>(path);
+            Sequence best = null;
+            Node n = start;
+            followed.add(n);
+            while (!stopped() && n.g() < maxLength && !n.isGoalState(client.goals)) {
+                for (Node child : this.successors(n, followed)) {
+                    Sequence s = this.search(child, level - 1, followed);
+                    if (best == null || s.score < best.score) {
+                        best = s;
+                    }
+                }
+                if (best == null || best.end == n) {
+                    break;
+                }
+                // One step along the best sequence: its node whose parent is n.
+                Node next = best.end;
+                while (next.parent != n) {
+                    next = next.parent;
+                }
+                n = next;
+                followed.add(n);
+            }
+            return best != null ? best : new Sequence(n, this.score(n));
+        }
+
+        void run(Node start) {
+            while (!stopped()) {
+                Sequence s = this.search(start, nesting, new HashSet<>());
+                iterations.incrementAndGet();
+                if (s.score < UNSOLVED) {
+                    synchronized (NestedMonteCarlo.this) {
+                        if (goal == null) {
+                            goal = s.end;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the workers until one finds a plan, and returns it; returns null if none does before the search stops.
+     */
+    public LinkedList<Node> solve() throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < this.workers; i++) {
+            Worker worker = new Worker(i);
+            // Each worker gets its own copy of the initial state, as nodes cache heuristic values.
+            Node start = new Node(null, this.client.level);
+            start.agent = this.client.initialState.agent;
+            System.arraycopy(this.client.initialState.boxes(), 0, start.boxes, 0, start.boxes.length);
+            start.countUnsatisfiedGoals(this.client.goals);
+            Thread t = new Thread(() -> {
+                try {
+                    worker.run(start);
+                } catch (OutOfMemoryError ex) {
+                    // The other workers stop too, rather than run into the same limit.
+                    this.cancel();
+                    System.err.println("Maximum memory usage exceeded.");
+                }
+            }, "NestedMonteCarlo-" + i);
+            t.setDaemon(true);
+            threads.add(t);
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        // Report progress every second, like Search does, until the workers stop.
+        for (Thread t : threads) {
+            t.join(1000);
+            while (t.isAlive()) {
+                System.err.println(this.searchStatus());
+                t.join(1000);
+            }
+        }
+        Node goal = this.goal;
+        return goal == null ? null : goal.extractPlan();
+    }
+
+    public String searchStatus() {
+        return String.format("#Iterations: %,6d, #Playouts: %,6d, Time: %3.2f s \t%s", this.iterations.get(),
+                this.playouts.get(), (System.currentTimeMillis() - this.startTime) / 1000f, Memory.stringRep());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Nested Monte Carlo Search of level %d with %d workers using %s", this.nesting,
+                this.workers, this.base.toString());
+    }
+}
@@ -9,28 +9,25 @@ import java.util.Random;
 import searchclient.Command.Type;
 
 public class Node {
-    private static final Random RND = new Random(1);
-
     //public static int MAX_ROW = 70;
     //public static int MAX_COL = 70;
 
-    public int agentRow;
-    public int agentCol;
+    // The cell of the agent; see Level for how cells are numbered.
+    public int agent;
 
-    public int maxRow;
-    public int maxCol;
-    // Arrays are indexed from the top-left of the level, with first index being row and second being column.
-    // Row 0: (0,0) (0,1) (0,2) (0,3) ...
-    // Row 1: (1,0) (1,1) (1,2) (1,3) ...
-    // Row 2: (2,0) (2,1) (2,2) (2,3) ...
+    public Level level;
+    // Arrays are indexed by cell, counting from the top-left of the level one row at a time.
+    // Row 0: 0           1               2               ...  maxCol - 1
+    // Row 1: maxCol      maxCol + 1      maxCol + 2      ...
+    // Row 2: 2 * maxCol  2 * maxCol + 1  2 * maxCol + 2  ...
     // ...
-    // (Start in the top left corner, first go down, then go right)
-    // E.g. this.walls[2] is an array of booleans having size MAX_COL.
-    // this.walls[row][col] is true if there's a wall at (row, col)
+    // E.g. level.walls[cell] is true if there's a wall at that cell, and
+    // level.neighbour(cell, Dir.S) is the cell below it.
     //
 
     //public boolean[][] walls; // = new boolean[MAX_ROW][MAX_COL];
-    public char[][] boxes; // = new char[MAX_ROW][MAX_COL];
+    // Null for a delta-encoded node; boxes() works for every node.
+    public char[] boxes; // = new char[level.cells];
     //public char[][] goals; // = new char[MAX_ROW][MAX_COL];
 
     public Node parent;
@@ -38,14 +35,46 @@ public class Node {
 
     private int g;
 
+    // The box moved by the push or pull that produced this layout: from boxFrom to boxTo. When boxes is null, the
+    // layout is that of base with this one move applied, and chain counts the deltas back to a node with an array.
+    // See Level.useDeltaEncoding.
+    private Node base;
+    int boxFrom = -1;
+    int boxTo = -1;
+    char box;
+    private short chain;
+
     private int _hash = 0;
+    private int _boxHash = 0;
+    // The box-dependent part of the heuristic, resolved once per layout; see Heuristic.h.
+    Heuristic.BoxEntry boxEntry;
+    // The value of h for this node and the heuristic that computed it; see Heuristic.h and Heuristic.hBatch.
+    Heuristic hOwner;
+    int hValue;
+    // Number of goals in unsatisfiedGoals without a box of their letter, kept up to date by childFor.
+    private char[] unsatisfiedGoals;
+    private int unsatisfied;
+
+    public Node(Node parent, Level level) {
+        this(parent, level, new char[level.cells]);
+    }
 
-    public Node(Node parent, int maxRow, int maxCol) {
+    /**
+     * A state with the given agent cell, boxes and path cost but without a parent, for searches that keep the path
+     * elsewhere; see DistributedSearch.
+     */
+    Node(Level level, int agent, char[] boxes, int g) {
+        this(null, level, boxes);
+        this.agent = agent;
+        this.g = g;
+    }
+
+    // Boxes are never modified once a node has been generated, so nodes with the same layout may share the array.
+    private Node(Node parent, Level level, char[] boxes) {
         this.parent = parent;
-        this.maxRow = maxRow;
-        this.maxCol = maxCol;
+        this.level = level;
         //this.walls = new boolean[maxRow][maxCol];
-        this.boxes = new char[maxRow][maxCol];
+        this.boxes = boxes;
         //this.goals = new char[maxRow][maxCol];
         if (parent == null) {
             this.g = 0;
@@ -62,89 +91,224 @@ public class Node {
         return this.parent == null;
     }
 
-    public boolean isGoalState(char[][] goals) {
-        for (int row = 1; row < maxRow - 1; row++) {
-            for (int col = 1; col < maxCol - 1; col++) {
-                char g = goals[row][col];
-                char b = Character.toLowerCase(boxes[row][col]);
-                if (g > 0 && b != g) {
-                    return false;
-                }
+    public boolean isGoalState(char[] goals) {
+        if (this.unsatisfiedGoals != goals) {
+            this.countUnsatisfiedGoals(goals);
+        }
+        return this.unsatisfied == 0;
+    }
+
+    /**
+     * The number of goals not covered by a box of their letter.
+     */
+    public int unsatisfiedGoalCount(char[] goals) {
+        if (this.unsatisfiedGoals != goals) {
+            this.countUnsatisfiedGoals(goals);
+        }
+        return this.unsatisfied;
+    }
+
+    /**
+     * Counts the goals not covered by a box of their letter. Successors update the count as boxes enter and leave
+     * goal cells, so this only has to run on the node a search starts from. It has to run again if the contents
+     * of goals change.
+     */
+    public void countUnsatisfiedGoals(char[] goals) {
+        char[] boxes = this.boxes();
+        int count = 0;
+        for (int cell = 0; cell < goals.length; cell++) {
+            char g = goals[cell];
+            char b = Character.toLowerCase(boxes[cell]);
+            if (g > 0 && b != g) {
+                count++;
             }
         }
-        return true;
+        this.unsatisfied = count;
+        this.unsatisfiedGoals = goals;
+    }
+
+    // Derives the unsatisfied goal count of this successor of parent, in which box moved between the two cells.
+    private void countMovedBox(Node parent, char box, int from, int to) {
+        char[] goals = parent.unsatisfiedGoals;
+        if (goals == null) {
+            return;
+        }
+        char letter = Character.toLowerCase(box);
+        int count = parent.unsatisfied;
+        if (goals[from] == letter) {
+            count++;
+        }
+        if (goals[to] == letter) {
+            count--;
+        }
+        this.unsatisfied = count;
+        this.unsatisfiedGoals = goals;
     }
 
-    public ArrayList<Node> getExpandedNodes(boolean[][] walls) {
-        ArrayList<Node> expandedNodes = new ArrayList<Node>(Command.EVERY.length);
-        for (Command c : Command.EVERY) {
-            // Determine applicability of action
-            int newAgentRow = this.agentRow + Command.dirToRowChange(c.dir1);
-            int newAgentCol = this.agentCol + Command.dirToColChange(c.dir1);
+    public ArrayList<Node> getExpandedNodes(Random rnd) {
+        return this.getExpandedNodes(null, rnd);
+    }
 
-            if (c.actionType == Type.Move) {
-                // Check if there's a wall or box on the cell to which the agent is moving
-                if (this.cellIsFree(newAgentRow, newAgentCol, walls)) {
-                    Node n = this.ChildNode();
-                    n.action = c;
-                    n.agentRow = newAgentRow;
-                    n.agentCol = newAgentCol;
-                    expandedNodes.add(n);
-                }
-            } else if (c.actionType == Type.Push) {
-                // Make sure that there's actually a box to move
-                if (this.boxAt(newAgentRow, newAgentCol)) {
-                    int newBoxRow = newAgentRow + Command.dirToRowChange(c.dir2);
-                    int newBoxCol = newAgentCol + Command.dirToColChange(c.dir2);
-                    // .. and that new cell of box is free
-                    if (this.cellIsFree(newBoxRow, newBoxCol, walls)) {
-                        Node n = this.ChildNode();
-                        n.action = c;
-                        n.agentRow = newAgentRow;
-                        n.agentCol = newAgentCol;
-                        n.boxes[newBoxRow][newBoxCol] = this.boxes[newAgentRow][newAgentCol];
-                        n.boxes[newAgentRow][newAgentCol] = 0;
-                        expandedNodes.add(n);
-                    }
-                }
-            } else if (c.actionType == Type.Pull) {
-                // Cell is free where agent is going
-                if (this.cellIsFree(newAgentRow, newAgentCol, walls)) {
-                    int boxRow = this.agentRow + Command.dirToRowChange(c.dir2);
-                    int boxCol = this.agentCol + Command.dirToColChange(c.dir2);
-                    // .. and there's a box in "dir2" of the agent
-                    if (this.boxAt(boxRow, boxCol)) {
-                        Node n = this.ChildNode();
-                        n.action = c;
-                        n.agentRow = newAgentRow;
-                        n.agentCol = newAgentCol;
-                        n.boxes[this.agentRow][this.agentCol] = this.boxes[boxRow][boxCol];
-                        n.boxes[boxRow][boxCol] = 0;
-                        expandedNodes.add(n);
-                    }
+    /**
+     * Expands this node, and if tunnels is given, turns every straight push or pull that leaves a box in a tunnel
+     * into a macro action that keeps going until the box is out of the tunnel, reaches a goal or is blocked.
+     * The intermediate nodes are kept as parents of the returned node, so extractPlan still yields unit actions.
+     * The successors are shuffled with rnd, which each search keeps for itself so that searches on several threads
+     * neither contend for one generator nor change each other's order.
+     */
+    public ArrayList<Node> getExpandedNodes(LevelAnalysis tunnels, Random rnd) {
+        Command[] applicable = this.level.applicableCommands(this.agent);
+        ArrayList<Node> expandedNodes = new ArrayList<Node>(applicable.length);
+        // A delta-encoded node is rebuilt once for all its children.
+        char[] boxes = this.boxes();
+        for (Command c : applicable) {
+            Node n = this.childFor(c, boxes);
+            if (n != null) {
+                if (tunnels != null) {
+                    n = n.throughTunnel(c, tunnels);
                 }
+                expandedNodes.add(n);
             }
         }
-        Collections.shuffle(expandedNodes, RND);
+        Collections.shuffle(expandedNodes, rnd);
         return expandedNodes;
     }
 
-    private boolean cellIsFree(int row, int col, boolean[][] walls) {
-        return !walls[row][col] && this.boxes[row][col] == 0;
+    // Repeats c, which produced this node, while the box it moved stays in a tunnel.
+    private Node throughTunnel(Command c, LevelAnalysis tunnels) {
+        Command.Dir boxDir;
+        if (c.actionType == Type.Push && c.dir1 == c.dir2) {
+            boxDir = c.dir2;
+        } else if (c.actionType == Type.Pull && Command.isOpposite(c.dir1, c.dir2)) {
+            boxDir = c.dir1;
+        } else {
+            return this;
+        }
+
+        Node n = this;
+        while (true) {
+            // The box is in front of a pushing agent and behind a pulling one; pulls come from a free cell.
+            int box = c.actionType == Type.Push ? this.level.neighbour(n.agent, boxDir) : this.level.neighbour(n.agent, c.dir2);
+            // Leave boxes on goals alone: the tunnel may be where they belong.
+            if (box < 0 || !tunnels.isTunnel(box, boxDir) || tunnels.goals[box] != 0) {
+                return n;
+            }
+            Node next = n.childFor(c);
+            if (next == null) {
+                return n;
+            }
+            n = next;
+        }
     }
 
-    private boolean boxAt(int row, int col) {
-        return this.boxes[row][col] > 0;
+    /**
+     * Returns the node reached by applying c in this state, or null if c is not applicable.
+     * These are the rules the server applies to a single agent, so replaying a plan through childFor validates it.
+     */
+    public Node childFor(Command c) {
+        return this.childFor(c, this.boxes());
     }
 
-    private Node ChildNode() {
-        Node copy = new Node(this, maxRow, maxCol);
-        for (int row = 0; row < maxRow; row++) {
-            //System.arraycopy(this.walls[row], 0, copy.walls[row], 0, maxCol);
-            System.arraycopy(this.boxes[row], 0, copy.boxes[row], 0, maxCol);
-            //System.arraycopy(this.goals[row], 0, copy.goals[row], 0, maxCol);
+    // childFor, given the box layout of this node.
+    private Node childFor(Command c, char[] boxes) {
+        // Determine applicability of action
+        int newAgent = this.level.neighbour(this.agent, c.dir1);
+        if (newAgent < 0) {
+            return null;
         }
-        return copy;
+
+        if (c.actionType == Type.Move) {
+            // Check if there's a box on the cell to which the agent is moving
+            if (boxes[newAgent] == 0) {
+                // Moves leave the boxes where they are, so the child shares the box array (or delta) and its hash.
+                Node n = new Node(this, this.level, this.boxes);
+                n.action = c;
+                n.agent = newAgent;
+                n.base = this.base;
+                n.boxFrom = this.boxFrom;
+                n.boxTo = this.boxTo;
+                n.box = this.box;
+                n.chain = this.chain;
+                n._boxHash = this._boxHash;
+                n.boxEntry = this.boxEntry;
+                n.unsatisfied = this.unsatisfied;
+                n.unsatisfiedGoals = this.unsatisfiedGoals;
+                return n;
+            }
+        } else if (c.actionType == Type.Push) {
+            // Make sure that there's actually a box to move
+            if (boxes[newAgent] > 0) {
+                int newBox = this.level.neighbour(newAgent, c.dir2);
+                // .. and that new cell of box is free
+                if (newBox >= 0 && boxes[newBox] == 0) {
+                    Node n = this.ChildNode(boxes, newAgent, newBox);
+                    n.action = c;
+                    n.agent = newAgent;
+                    return n;
+                }
+            }
+        } else if (c.actionType == Type.Pull) {
+            // Cell is free where agent is going
+            if (boxes[newAgent] == 0) {
+                int box = this.level.neighbour(this.agent, c.dir2);
+                // .. and there's a box in "dir2" of the agent
+                if (box >= 0 && boxes[box] > 0) {
+                    Node n = this.ChildNode(boxes, box, this.agent);
+                    n.action = c;
+                    n.agent = newAgent;
+                    return n;
+                }
+            }
+        }
+        return null;
+    }
+
+    // The child in which the box on cell from of boxes, the layout of this node, has moved to cell to.
+    private Node ChildNode(char[] boxes, int from, int to) {
+        //System.arraycopy(this.walls, 0, copy.walls, 0, level.cells);
+        //System.arraycopy(this.goals, 0, copy.goals, 0, level.cells);
+        char box = boxes[from];
+        Node n;
+        if (this.chain + 1 < this.level.deltaInterval) {
+            n = new Node(this, this.level, null);
+            n.base = this;
+            n.chain = (short) (this.chain + 1);
+        } else {
+            n = new Node(this, this.level, boxes.clone());
+            n.boxes[to] = box;
+            n.boxes[from] = 0;
+        }
+        n.boxFrom = from;
+        n.boxTo = to;
+        n.box = box;
+        n._boxHash = this.level.movedBoxHash(this.boxHash(), box, from, to);
+        n.countMovedBox(this, box, from, to);
+        return n;
+    }
+
+    /**
+     * The box layout of this node. For a delta-encoded node this is a new array, rebuilt by applying the box moves
+     * since the closest ancestor that has an array; it should be kept for as long as it is needed, not asked for again.
+     */
+    public char[] boxes() {
+        if (this.boxes != null) {
+            return this.boxes;
+        }
+        int[] moves = new int[this.chain * 2];
+        Node n = this;
+        int count = 0;
+        while (n.boxes == null) {
+            moves[count++] = n.boxFrom;
+            moves[count++] = n.boxTo;
+            n = n.base;
+        }
+        char[] boxes = n.boxes.clone();
+        // Replay the moves oldest first; the box that moved is the one on its from cell at that point.
+        for (int i = count - 2; i >= 0; i -= 2) {
+            boxes[moves[i + 1]] = boxes[moves[i]];
+            boxes[moves[i]] = 0;
+        }
+        return boxes;
     }
 
     public LinkedList<Node> extractPlan() {
@@ -157,14 +321,23 @@ public class Node {
         return plan;
     }
 
+    /**
+     * Hash of the box layout alone, so states that only differ by agent position share it.
+     */
+    public int boxHash() {
+        if (this._boxHash == 0) {
+            this._boxHash = Arrays.hashCode(this.boxes());
+        }
+        return this._boxHash;
+    }
+
     @Override
     public int hashCode() {
         if (this._hash == 0) {
             final int prime = 31;
             int result = 1;
-            result = prime * result + this.agentCol;
-            result = prime * result + this.agentRow;
-            result = prime * result + Arrays.deepHashCode(this.boxes);
+            result = prime * result + this.agent;
+            result = prime * result + this.boxHash();
             //result = prime * result + Arrays.deepHashCode(this.goals);
             //result = prime * result + Arrays.deepHashCode(this.walls);
             this._hash = result;
@@ -181,9 +354,9 @@ public class Node {
         if (this.getClass() != obj.getClass())
             return false;
         Node other = (Node) obj;
-        if (this.agentRow != other.agentRow || this.agentCol != other.agentCol)
+        if (this.agent != other.agent)
             return false;
-        if (!Arrays.deepEquals(this.boxes, other.boxes))
+        if (!this.sameBoxes(other))
             return false;
         /*if (!Arrays.deepEquals(this.goals, other.goals))
           return false;
@@ -192,21 +365,38 @@ public class Node {
         return true;
     }
 
+    // Compares box layouts, rebuilding delta-encoded ones only if they cannot be told apart otherwise.
+    private boolean sameBoxes(Node other) {
+        if (this.boxes != null && other.boxes != null) {
+            return this.boxes == other.boxes || Arrays.equals(this.boxes, other.boxes);
+        }
+        if (this.boxHash() != other.boxHash()) {
+            return false;
+        }
+        // The same move from the same layout, as for the move successors of one node.
+        if (this.base == other.base && this.boxFrom == other.boxFrom && this.boxTo == other.boxTo) {
+            return true;
+        }
+        return Arrays.equals(this.boxes(), other.boxes());
+    }
+
     @Override
     public String toString() {
+        char[] boxes = this.boxes();
         StringBuilder s = new StringBuilder();
-        for (int row = 0; row < maxRow; row++) {
+        for (int row = 0; row < level.maxRow; row++) {
             /*if (!this.walls[row][0]) {
               break;
               }*/
-            for (int col = 0; col < maxCol; col++) {
-                if (this.boxes[row][col] > 0) {
-                    s.append(this.boxes[row][col]);
-                } /*else if (this.goals[row][col] > 0) {
-                s.append(this.goals[row][col]);
-                } else if (this.walls[row][col]) {
+            for (int col = 0; col < level.maxCol; col++) {
+                int cell = level.cell(row, col);
+                if (boxes[cell] > 0) {
+                    s.append(boxes[cell]);
+                } /*else if (this.goals[cell] > 0) {
+                s.append(this.goals[cell]);
+                } else if (this.walls[cell]) {
                 s.append("+");
-                } */else if (row == this.agentRow && col == this.agentCol) {
+                } */else if (cell == this.agent) {
                     s.append("0");
                 } else {
                     s.append(" ");
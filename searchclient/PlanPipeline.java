@@ -0,0 +1,112 @@
+package searchclient;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/** PlanPipeline sends a finished plan to the server without waiting for each response before sending the next action.
+ * A transmitter thread streams actions while a receiver thread reads and checks the responses, in the style of
+ * ServerTransmitter/ServerReceiver in sampleclients/GuiClient.
+ *
+ * At most 'window' actions are in flight (sent but not yet acknowledged) at any time. The first response containing
+ * "false" stops the transmitter; responses to actions already in flight are still read so the server is not left
+ * blocked on a full output buffer.
+ */
+public class PlanPipeline {
+    public static final int DEFAULT_WINDOW = 64;
+
+    // Placed on the in-flight queue by the transmitter once it stops sending.
+    private static final Node END_OF_PLAN = new Node(null, new Level(new boolean[1][1], new char[1][1]));
+
+    private final List<Node> plan;
+    private final BufferedReader serverMessages;
+    private final PrintStream out;
+
+    private final Semaphore window;
+    private final LinkedBlockingQueue<Node> inFlight = new LinkedBlockingQueue<>();
+
+    private volatile boolean aborted = false;
+    private int acknowledged = 0;
+
+    public PlanPipeline(List<Node> plan, BufferedReader serverMessages, PrintStream out, int window) {
+        this.plan = plan;
+        this.serverMessages = serverMessages;
+        this.out = out;
+        this.window = new Semaphore(Math.max(1, window));
+    }
+
+    /**
+     * Streams the plan and blocks until every sent action has been acknowledged.
+     * Returns true if the whole plan was accepted by the server.
+     */
+    public boolean execute() throws InterruptedException {
+        Thread transmitter = new Thread(this::transmit, "PlanTransmitter");
+        Thread receiver = new Thread(this::receive, "PlanReceiver");
+        transmitter.start();
+        receiver.start();
+        transmitter.join();
+        receiver.join();
+        return !this.aborted && this.acknowledged == this.plan.size();
+    }
+
+    private void transmit() {
+        try {
+            for (Node n : this.plan) {
+                // Only flush once the window is full, so consecutive actions leave in as few writes as possible.
+                if (!this.window.tryAcquire()) {
+                    this.out.flush();
+                    this.window.acquire();
+                }
+                if (this.aborted) {
+                    break;
+                }
+                this.inFlight.put(n);
+                this.out.println(n.action.toString());
+            }
+            this.out.flush();
+        } catch (InterruptedException ex) {
+            this.aborted = true;
+        } finally {
+            this.inFlight.add(END_OF_PLAN);
+        }
+    }
+
+    private void receive() {
+        try {
+            while (true) {
+                Node n = this.inFlight.take();
+                if (n == END_OF_PLAN) {
+                    return;
+                }
+                String response = this.serverMessages.readLine();
+                this.window.release();
+                if (response == null) {
+                    System.err.println("Server closed the connection before the plan was completed.");
+                    this.aborted = true;
+                    // Let the transmitter observe the abort if it is waiting for a free slot.
+                    this.window.release(this.plan.size());
+                    return;
+                }
+                if (this.aborted) {
+                    // Drain responses to actions sent before the abort was noticed.
+                    continue;
+                }
+                if (response.contains("false")) {
+                    String act = n.action.toString();
+                    System.err.format("Server responsed with %s to the inapplicable action: %s\n", response, act);
+                    System.err.format("%s was attempted in \n%s\n", act, n.toString());
+                    this.aborted = true;
+                    continue;
+                }
+                this.acknowledged++;
+            }
+        } catch (IOException | InterruptedException ex) {
+            System.err.println("Plan receiver stopped: " + ex);
+            this.aborted = true;
+            this.window.release(this.plan.size());
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package searchclient;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/** PlanValidator checks plans against a level without the server: it applies the actions one by one from the initial
+ * state with Node.childFor, which implements the server's rules for a single agent, and checks that the last state
+ * satisfies the goals.
+ *
+ * The level is parsed once, so a validator can check any number of plans for its level; a plan costs one node per
+ * action. Run it to check plan files, one action per line as sent to the server (e.g. [Push(E,S)]), against a level:
+ *   $ java searchclient.PlanValidator levels/SAD1.lvl plan1.txt plan2.txt
+ * With - or no plan files, a single plan is read from standard input.
+ */
+public class PlanValidator {
+    private final SearchClient client;
+
+    public PlanValidator(SearchClient client) {
+        this.client = client;
+    }
+
+    /**
+     * A validator for the level in the given text, in the format of the files in levels/.
+     */
+    public static PlanValidator forLevel(String levelText) throws Exception {
+        return forLevel(new StringReader(levelText));
+    }
+
+    public static PlanValidator forLevel(File levelFile) throws Exception {
+        try (Reader reader = new FileReader(levelFile)) {
+            return forLevel(reader);
+        }
+    }
+
+    private static PlanValidator forLevel(Reader level) throws Exception {
+        return new PlanValidator(new SearchClient(new BufferedReader(level)));
+    }
+
+    public Node initialState() {
+        return this.client.initialState;
+    }
+
+    public char[] goals() {
+        return this.client.goals;
+    }
+
+    /** The outcome of replaying a plan. */
+    public static class Result {
+        // Number of actions applied before the plan ended or an action was not applicable.
+        public final int applied;
+        // The action that was not applicable, or null if every action was.
+        public final Command failed;
+        public final boolean solved;
+        // The state after the applied actions.
+        public final Node state;
+
+        Result(int applied, Command failed, boolean solved, Node state) {
+            this.applied = applied;
+            this.failed = failed;
+            this.solved = solved;
+            this.state = state;
+        }
+
+        public boolean isValid() {
+            return this.failed == null && this.solved;
+        }
+
+        @Override
+        public String toString() {
+            if (this.failed != null) {
+                return String.format("Action %d, %s, is not applicable in\n%s", this.applied + 1, this.failed, this.state);
+            }
+            return this.solved ? String.format("Solves the level in %d actions.", this.applied)
+                    : String.format("Does not solve the level; after %d actions the state is\n%s", this.applied, this.state);
+        }
+    }
+
+    /**
+     * Applies the commands from the initial state, stopping at the first one that is not applicable.
+     */
+    public Result validate(List<Command> plan) {
+        Node n = this.client.initialState;
+        int applied = 0;
+        for (Command c : plan) {
+            Node next = n.childFor(c);
+            if (next == null) {
+                return new Result(applied, c, false, n);
+            }
+            // Only the last state is needed, not the path to it.
+            next.parent = null;
+            n = next;
+            applied++;
+        }
+        return new Result(applied, null, n.isGoalState(this.client.goals), n);
+    }
+
+    /**
+     * Reads a plan with one action per line, as written by Command.toString. Blank lines are skipped.
+     * Throws IllegalArgumentException for a line that is not an action.
+     */
+    public static List<Command> readPlan(BufferedReader in) throws IOException {
+        List<Command> plan = new ArrayList<>();
+        String line;
+        for (int number = 1; (line = in.readLine()) != null; number++) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            Command c = Command.parse(line);
+            if (c == null) {
+                throw new IllegalArgumentException(String.format("Line %d is not an action: %s", number, line));
+            }
+            plan.add(c);
+        }
+        return plan;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Usage: java searchclient.PlanValidator <level> [plan file or - ...]");
+            System.exit(2);
+        }
+        PlanValidator validator = forLevel(new File(args[0]));
+        List<String> plans = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            plans.add(args[i]);
+        }
+        if (plans.isEmpty()) {
+            plans.add("-");
+        }
+
+        int invalid = 0;
+        for (String name : plans) {
+            Result result;
+            try (BufferedReader in = new BufferedReader(name.equals("-") ? new InputStreamReader(System.in) : new FileReader(name))) {
+                result = validator.validate(readPlan(in));
+            } catch (IllegalArgumentException ex) {
+                System.out.format("%s: %s\n", name, ex.getMessage());
+                invalid++;
+                continue;
+            }
+            System.out.format("%s: %s\n", name, result);
+            if (!result.isValid()) {
+                invalid++;
+            }
+        }
+        System.exit(invalid == 0 ? 0 : 1);
+    }
+}
@@ -0,0 +1,136 @@
+package searchclient;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import searchclient.Heuristic.*;
+import searchclient.Strategy.*;
+
+/** Portfolio runs several strategies on the same level at once and keeps the first plan found.
+ *
+ * Each configuration runs on its own thread with its own strategy, frontier and heuristic instance. The walls, goals
+ * and initial state are only read, and the heuristics are all built from one base instance so they share its
+ * distance tables. As soon as one search succeeds the others are cancelled and stop at their next iteration.
+ */
+public class Portfolio {
+    public static final String DEFAULT_CONFIGURATIONS = "bfs,astar,wastar,greedy";
+
+    private final SearchClient client;
+    private final List<String> names = new ArrayList<>();
+    private final List<Supplier<Strategy>> configurations = new ArrayList<>();
+    private final List<Strategy> running = new ArrayList<>();
+
+    private Node goal = null;
+    private Strategy winner = null;
+
+    /**
+     * Builds the portfolio from a comma-separated list of strategy names, as accepted on the command line without
+     * the leading dash (e.g. "bfs,astar,wastar,greedy").
+     */
+    public Portfolio(SearchClient client, String configurations) {
+        this.client = client;
+        Heuristic base = null;
+        for (String name : configurations.toLowerCase().split(",")) {
+            name = name.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            // The expensive distance tables are computed once, here, rather than on every thread.
+            if (base == null && !name.equals("bfs") && !name.equals("dfs")) {
+                base = new AStar(client.level, client.goals);
+            }
+            this.names.add(name);
+            this.configurations.add(configuration(name, client, base));
+        }
+        if (this.configurations.isEmpty()) {
+            throw new IllegalArgumentException("No strategies given for the portfolio.");
+        }
+    }
+
+    private static Supplier<Strategy> configuration(String name, SearchClient client, Heuristic base) {
+        switch (name) {
+            case "bfs":
+                return () -> new StrategyBFS();
+            case "dfs":
+                return () -> new StrategyDFS();
+            case "astar":
+                return () -> new StrategyBestFirst(new AStar(base, client.goals));
+            case "wastar":
+                return () -> new StrategyBestFirst(new WeightedAStar(base, client.goals, 5));
+            case "greedy":
+                return () -> new StrategyBestFirst(new Greedy(base, client.goals));
+            default:
+                throw new IllegalArgumentException("Unknown strategy in portfolio: " + name);
+        }
+    }
+
+    /**
+     * Runs all configurations and returns the plan of the first one to succeed, or null if all of them fail.
+     */
+    public LinkedList<Node> solve() throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < this.configurations.size(); i++) {
+            Strategy strategy = this.configurations.get(i).get();
+            this.running.add(strategy);
+            Thread t = new Thread(() -> this.run(strategy), "Portfolio-" + this.names.get(i));
+            t.setDaemon(true);
+            threads.add(t);
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        return this.goal == null ? null : this.goal.extractPlan();
+    }
+
+    private void run(Strategy strategy) {
+        Node found = null;
+        try {
+            found = this.client.Search(strategy, this.client.initialState, this.client.goals, 0);
+        } catch (OutOfMemoryError ex) {
+            System.err.format("%s: Maximum memory usage exceeded.\n", strategy.toString());
+        } catch (Exception ex) {
+            System.err.format("%s failed: %s\n", strategy.toString(), ex);
+        }
+        if (found == null) {
+            return;
+        }
+        synchronized (this) {
+            if (this.winner != null) {
+                return;
+            }
+            this.goal = found;
+            this.winner = strategy;
+        }
+        for (Strategy other : this.running) {
+            if (other != strategy) {
+                other.cancel();
+            }
+        }
+    }
+
+    /**
+     * The strategy whose plan was returned by solve, or null if no plan was found.
+     */
+    public Strategy winner() {
+        return this.winner;
+    }
+
+    public String searchStatus() {
+        StringBuilder s = new StringBuilder();
+        for (Strategy strategy : this.running) {
+            s.append(String.format("%s%s: %s\n", strategy.toString(), strategy == this.winner ? " (winner)" : "",
+                    strategy.searchStatus()));
+        }
+        return s.toString().trim();
+    }
+
+    @Override
+    public String toString() {
+        return "Portfolio of " + String.join(", ", this.names);
+    }
+}
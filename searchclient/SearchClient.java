@@ -1,10 +1,17 @@
 package searchclient;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.Random;
+import java.util.function.Consumer;
 
 import searchclient.Memory;
 import searchclient.Strategy.*;
@@ -13,15 +20,25 @@ import searchclient.Heuristic.*;
 public class SearchClient {
     public Node initialState;
     // walls and goals have been factored out of the Node class to avoid excess memory usage.
-    public boolean[][] walls;
-    public char[][] goals;
+    public Level level;
+    // The goals of level, by cell.
+    public char[] goals;
+    // Static analysis of walls and goals, only computed when macro actions are enabled.
+    public LevelAnalysis analysis;
+    // Saves the search every so often when set; see Checkpoint.
+    public Checkpoint checkpoint;
+    // Called with the strategy every 1000 iterations of Search when set, instead of printing its status; see Solver.
+    public Consumer<Strategy> progress;
 
+    /**
+     * Parses a level from the server. Throws IllegalArgumentException if the level is not a single-agent level without
+     * colors.
+     */
     public SearchClient(BufferedReader serverMessages) throws Exception {
         // Read lines specifying colors
         String line = serverMessages.readLine();
         if (line.matches("^[a-z]+:\\s*[0-9A-Z](\\s*,\\s*[0-9A-Z])*\\s*$")) {
-            System.err.println("Error, client does not support colors.");
-            System.exit(1);
+            throw new IllegalArgumentException("Error, client does not support colors.");
         }
 
         int maxRow = 0;
@@ -31,7 +48,7 @@ public class SearchClient {
         ArrayList<String> readLines = new ArrayList<>();
 
         // read through file first time to get maxRow and maxCol
-        while (!line.equals("")) {
+        while (line != null && !line.equals("")) {
             maxRow++;
             int currentColLen = line.length();
             if (currentColLen > maxCol) {
@@ -41,9 +58,11 @@ public class SearchClient {
             line = serverMessages.readLine();
         }
 
-        this.walls = new boolean[maxRow][maxCol];
-        this.goals = new char[maxRow][maxCol];
-        this.initialState = new Node(null, maxRow, maxCol);
+        boolean[][] walls = new boolean[maxRow][maxCol];
+        char[][] goals = new char[maxRow][maxCol];
+        char[][] boxes = new char[maxRow][maxCol];
+        int agentRow = 0;
+        int agentCol = 0;
 
         for (int row = 0; row < readLines.size(); row++) {
             String currentLine = readLines.get(row);
@@ -51,72 +70,134 @@ public class SearchClient {
                 char chr = currentLine.charAt(col);
 
                 if (chr == '+') { // Wall.
-                    this.walls[row][col] = true;
+                    walls[row][col] = true;
                 } else if ('0' <= chr && chr <= '9') { // Agent.
                     if (agentFound) {
-                        System.err.println("Error, not a single agent level");
-                        System.exit(1);
+                        throw new IllegalArgumentException("Error, not a single agent level");
                     }
                     agentFound = true;
-                    this.initialState.agentRow = row;
-                    this.initialState.agentCol = col;
+                    agentRow = row;
+                    agentCol = col;
                 } else if ('A' <= chr && chr <= 'Z') { // Box.
-                    this.initialState.boxes[row][col] = chr;
+                    boxes[row][col] = chr;
                 } else if ('a' <= chr && chr <= 'z') { // Goal.
-                    this.goals[row][col] = chr;
+                    goals[row][col] = chr;
                 } else if (chr == ' ') {
                     // Free space.
                 } else {
-                    System.err.println("Error, read invalid level character: " + (int) chr);
-                    System.exit(1);
+                    throw new IllegalArgumentException("Error, read invalid level character: " + (int) chr);
                 }
             }
         }
+
+        // From here on the level is stored by cell, see Level.
+        this.level = new Level(walls, goals);
+        this.goals = this.level.goals;
+        this.initialState = new Node(null, this.level);
+        this.initialState.agent = this.level.cell(agentRow, agentCol);
+        for (int row = 0; row < maxRow; row++) {
+            for (int col = 0; col < maxCol; col++) {
+                this.initialState.boxes[this.level.cell(row, col)] = boxes[row][col];
+            }
+        }
+    }
+
+    /**
+     * A client for the same level, sharing its walls and goals, with its own analysis, checkpoint and progress settings.
+     * Searches on the two clients may run at the same time. Each gets its own initial state, which shares the box
+     * array: a search writes its goal count and heuristic value to the node it starts from.
+     */
+    public SearchClient(SearchClient other) {
+        this.level = other.level;
+        this.goals = other.goals;
+        this.initialState = new Node(other.level, other.initialState.agent, other.initialState.boxes(), 0);
     }
 
     public LinkedList<Node> Search(Strategy strategy) throws IOException {
-        System.err.format("Search starting with strategy %s.\n", strategy.toString());
-        strategy.addToFrontier(this.initialState);
+        Node goal = this.Search(strategy, this.initialState, this.goals, 0);
+        return goal == null ? null : goal.extractPlan();
+    }
+
+    /**
+     * Searches from start until a state satisfying goals is found, and returns that state.
+     * Gives up and returns null when the frontier runs empty, the strategy is cancelled or, if expansionLimit is positive,
+     * after that many expansions.
+     */
+    public Node Search(Strategy strategy, Node start, char[] goals, int expansionLimit) throws IOException {
+        if (this.progress == null) {
+            System.err.format("Search starting with strategy %s.\n", strategy.toString());
+        }
+        // Successors keep the goal count of start up to date, but callers may have changed the goals since it was counted.
+        start.countUnsatisfiedGoals(goals);
+        strategy.addToFrontier(start);
+        return this.Search(strategy, goals, expansionLimit);
+    }
+
+    /**
+     * Continues a search from the nodes already in the strategy's frontier, e.g. after Checkpoint.restore.
+     */
+    public Node Search(Strategy strategy, char[] goals, int expansionLimit) throws IOException {
+        boolean earlyGoalTest = strategy.earlyGoalTest();
+        // Each search shuffles successors with its own generator, so concurrent searches do not disturb each other.
+        Random rnd = new Random(1);
 
         int iterations = 0;
+        int expansions = 0;
         while (true) {
             if (iterations == 1000) {
-                System.err.println(strategy.searchStatus());
+                if (this.progress != null) {
+                    this.progress.accept(strategy);
+                } else {
+                    System.err.println(strategy.searchStatus());
+                }
                 iterations = 0;
+                if (this.checkpoint != null) {
+                    this.checkpoint.maybeWrite(this, strategy);
+                }
+            }
+
+            if (strategy.frontierIsEmpty() || strategy.isCancelled()) {
+                return null;
             }
 
-            if (strategy.frontierIsEmpty()) {
+            if (expansionLimit > 0 && expansions++ >= expansionLimit) {
                 return null;
             }
 
             Node leafNode = strategy.getAndRemoveLeaf();
 
-            if (leafNode.isGoalState(this.goals)) {
-                return leafNode.extractPlan();
+            if (leafNode.isGoalState(goals)) {
+                return leafNode;
             }
 
             strategy.addToExplored(leafNode);
-            for (Node n : leafNode.getExpandedNodes(this.walls)) { // The list of expanded nodes is shuffled randomly; see Node.java.
-                if (!strategy.isExplored(n) && !strategy.inFrontier(n)) {
+            ArrayList<Node> children = leafNode.getExpandedNodes(this.analysis, rnd); // The list of expanded nodes is shuffled randomly; see Node.java.
+            strategy.evaluateChildren(leafNode, children);
+            for (Node n : children) {
+                if (strategy.isExplored(n)) {
+                    continue;
+                }
+                if (!strategy.inFrontier(n)) {
                     strategy.addToFrontier(n);
+                    if (earlyGoalTest && n.isGoalState(goals)) {
+                        return n;
+                    }
+                } else {
+                    strategy.updateFrontier(n);
                 }
             }
             iterations++;
         }
     }
 
-    public static void main(String[] args) throws Exception {
-        BufferedReader serverMessages = new BufferedReader(new InputStreamReader(System.in));
-
-        // Use stderr to print to console
-        System.err.println("SearchClient initializing. I am sending this using the error output stream.");
-
-        // Read level and create the initial state of the problem
-        SearchClient client = new SearchClient(serverMessages);
-
+    /**
+     * Creates the strategy named by strategyArg. strategyParam is the value following the strategy argument on the
+     * command line, if any, for strategies that take one.
+     */
+    static Strategy chooseStrategy(String strategyArg, String strategyParam, SearchClient client) {
         Strategy strategy;
-        if (args.length > 0) {
-            switch (args[0].toLowerCase()) {
+        if (strategyArg != null) {
+            switch (strategyArg) {
                 case "-bfs":
                     strategy = new StrategyBFS();
                     break;
@@ -124,41 +205,261 @@ public class SearchClient {
                     strategy = new StrategyDFS();
                     break;
                 case "-astar":
-                    strategy = new StrategyBestFirst(new AStar(client.initialState, client.goals, client.walls));
+                    strategy = new StrategyBestFirst(new AStar(client.level, client.goals));
                     break;
                 case "-wastar":
                     // You're welcome to test WA* out with different values, but for the report you must at least indicate benchmarks for W = 5.
-                    strategy = new StrategyBestFirst(new WeightedAStar(client.initialState, client.goals, client.walls, 5));
+                    int w = strategyParam != null ? Integer.parseInt(strategyParam) : 5;
+                    strategy = new StrategyBestFirst(new WeightedAStar(client.level, client.goals, w));
                     break;
                 case "-greedy":
-                    strategy = new StrategyBestFirst(new Greedy(client.initialState, client.goals, client.walls));
+                    strategy = new StrategyBestFirst(new Greedy(client.level, client.goals));
+                    break;
+                case "-peastar":
+                    strategy = new StrategyPEAStar(new AStar(client.level, client.goals));
+                    break;
+                case "-ehc":
+                    strategy = new StrategyEHC(new Greedy(client.level, client.goals));
+                    break;
+                case "-multiqueue":
+                    strategy = new StrategyMultiQueue(new Greedy(client.level, client.goals));
+                    break;
+                case "-beam":
+                    // Width of the beam, optionally followed by the widest beam to restart with, e.g. 100:10000.
+                    int width = 1000;
+                    int maxWidth = 0;
+                    if (strategyParam != null) {
+                        String[] widths = strategyParam.split(":");
+                        width = Integer.parseInt(widths[0]);
+                        if (widths.length > 1) {
+                            maxWidth = Integer.parseInt(widths[1]);
+                        }
+                    }
+                    strategy = new StrategyBeam(new AStar(client.level, client.goals), width, maxWidth);
+                    break;
+                case "-smastar":
+                    // Memory budget as a number of nodes, or as a percentage of the maximum heap (75% by default).
+                    int maxNodes = 0;
+                    double heapFraction = 0.75;
+                    if (strategyParam != null && strategyParam.endsWith("%")) {
+                        heapFraction = Double.parseDouble(strategyParam.substring(0, strategyParam.length() - 1)) / 100;
+                    } else if (strategyParam != null) {
+                        maxNodes = Integer.parseInt(strategyParam);
+                    }
+                    strategy = new StrategySMAStar(new AStar(client.level, client.goals), maxNodes, heapFraction);
                     break;
                 default:
                     strategy = new StrategyBFS();
-                    System.err.println("Defaulting to BFS search. Use arguments -bfs, -dfs, -astar, -wastar, or -greedy to set the search strategy.");
+                    System.err.println("Defaulting to BFS search. Use arguments -bfs, -dfs, -astar, -wastar, -greedy, -peastar, -multiqueue, -ehc, -beam, or -smastar to set the search strategy.");
             }
         } else {
             strategy = new StrategyBFS();
-            System.err.println("Defaulting to BFS search. Use arguments -bfs, -dfs, -astar, -wastar, or -greedy to set the search strategy.");
+            System.err.println("Defaulting to BFS search. Use arguments -bfs, -dfs, -astar, -wastar, -greedy, -peastar, -multiqueue, -ehc, -beam, or -smastar to set the search strategy.");
         }
+        return strategy;
+    }
+
+    public static void main(String[] args) throws Exception {
+        BufferedReader serverMessages = new BufferedReader(new InputStreamReader(System.in));
 
-        LinkedList<Node> solution;
+        // Use stderr to print to console
+        System.err.println("SearchClient initializing. I am sending this using the error output stream.");
+
+        // Read level and create the initial state of the problem
+        SearchClient client = null;
         try {
-            solution = client.Search(strategy);
-        } catch (OutOfMemoryError ex) {
-            System.err.println("Maximum memory usage exceeded.");
-            solution = null;
+            client = new SearchClient(serverMessages);
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.exit(1);
+        }
+        // -auto stands for the arguments that StrategyRules picks for this level.
+        args = StrategyRules.expand(args, client);
+
+        String strategyArg = null;
+        String strategyParam = null;
+        int pipelineWindow = 0;
+        SolutionCache cache = null;
+        int subgoalLimit = 0;
+        String portfolioConfigs = null;
+        int nmcsLevel = 0;
+        int nmcsTimeLimit = NestedMonteCarlo.DEFAULT_TIME_LIMIT;
+        File checkpointFile = null;
+        int checkpointInterval = Checkpoint.DEFAULT_INTERVAL;
+        File resumeFile = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i].toLowerCase()) {
+                case "-pipeline":
+                    // Optionally followed by the maximum number of actions in flight.
+                    pipelineWindow = PlanPipeline.DEFAULT_WINDOW;
+                    if (i + 1 < args.length && args[i + 1].matches("[0-9]+")) {
+                        pipelineWindow = Integer.parseInt(args[++i]);
+                    }
+                    break;
+                case "-cache":
+                    cache = new SolutionCache(new File(args[++i]));
+                    break;
+                case "-subgoals":
+                    // Optionally followed by the expansion limit for each subproblem.
+                    subgoalLimit = SubgoalSolver.DEFAULT_EXPANSION_LIMIT;
+                    if (i + 1 < args.length && args[i + 1].matches("[0-9]+")) {
+                        subgoalLimit = Integer.parseInt(args[++i]);
+                    }
+                    break;
+                case "-portfolio":
+                    // Optionally followed by a comma-separated list of strategies, e.g. bfs,astar,greedy.
+                    portfolioConfigs = Portfolio.DEFAULT_CONFIGURATIONS;
+                    if (i + 1 < args.length && !args[i + 1].startsWith("-")) {
+                        portfolioConfigs = args[++i];
+                    }
+                    break;
+                case "-nmcs":
+                    // Optionally followed by the nesting level, or by level:seconds to change the time limit too.
+                    nmcsLevel = NestedMonteCarlo.DEFAULT_LEVEL;
+                    if (i + 1 < args.length && args[i + 1].matches("[0-9]+(:[0-9]+)?")) {
+                        String[] parts = args[++i].split(":");
+                        nmcsLevel = Integer.parseInt(parts[0]);
+                        if (parts.length > 1) {
+                            nmcsTimeLimit = Integer.parseInt(parts[1]);
+                        }
+                    }
+                    // Level 0 would be a single playout, and nmcsLevel 0 means no nested Monte Carlo search at all.
+                    if (nmcsLevel < 1) {
+                        System.err.println("Error, -nmcs needs a nesting level of at least 1.");
+                        System.exit(1);
+                    }
+                    break;
+                case "-checkpoint":
+                    // Followed by the file and optionally the number of seconds between checkpoints.
+                    checkpointFile = new File(args[++i]);
+                    if (i + 1 < args.length && args[i + 1].matches("[0-9]+")) {
+                        checkpointInterval = Integer.parseInt(args[++i]);
+                    }
+                    break;
+                case "-resume":
+                    resumeFile = new File(args[++i]);
+                    break;
+                case "-distances":
+                    // A distance table written by FastStart -distances for this level.
+                    File distances = new File(args[++i]);
+                    try {
+                        if (!client.level.loadDistances(distances)) {
+                            System.err.format("%s does not belong to this level; computing the distances.\n", distances);
+                        }
+                    } catch (IOException ex) {
+                        System.err.format("Could not read %s (%s); computing the distances.\n", distances, ex);
+                    }
+                    break;
+                case "-delta":
+                    // Optionally followed by the number of box moves between full copies of the boxes.
+                    int deltaInterval = Level.DEFAULT_DELTA_INTERVAL;
+                    if (i + 1 < args.length && args[i + 1].matches("[0-9]+")) {
+                        deltaInterval = Integer.parseInt(args[++i]);
+                    }
+                    client.level.useDeltaEncoding(deltaInterval);
+                    break;
+                case "-macros":
+                    client.analysis = new LevelAnalysis(client.level, client.goals);
+                    System.err.format("Macro actions enabled: %d articulation points, %d tunnel cells.\n",
+                            client.analysis.countArticulationPoints(), client.analysis.countTunnelCells());
+                    break;
+                default:
+                    strategyArg = args[i].toLowerCase();
+                    if (i + 1 < args.length && !args[i + 1].startsWith("-")) {
+                        strategyParam = args[++i];
+                    }
+            }
+        }
+
+        // A resumed search keeps saving to the file it was resumed from.
+        if (checkpointFile == null) {
+            checkpointFile = resumeFile;
+        }
+        if (checkpointFile != null) {
+            if (portfolioConfigs != null || subgoalLimit > 0 || nmcsLevel > 0) {
+                System.err.println("Checkpoints are not supported with -portfolio, -subgoals or -nmcs, continuing without them.");
+                resumeFile = null;
+            } else {
+                client.checkpoint = new Checkpoint(checkpointFile, checkpointInterval);
+            }
+        }
+
+        LinkedList<Node> solution = null;
+        if (cache != null) {
+            // A cached plan from a suboptimal strategy should not stand in for a requested optimal search.
+            boolean requireOptimal = strategyArg == null || strategyArg.equals("-bfs");
+            solution = cache.lookup(client, requireOptimal);
         }
 
         if (solution == null) {
-            System.err.println(strategy.searchStatus());
-            System.err.println("Unable to solve level.");
-            System.exit(0);
-        } else {
-            System.err.println("\nSummary for " + strategy.toString());
+            Strategy strategy = portfolioConfigs == null && nmcsLevel == 0 ? chooseStrategy(strategyArg, strategyParam, client) : null;
+            if (client.checkpoint != null && !strategy.supportsCheckpoint()) {
+                System.err.format("%s does not support checkpoints, continuing without them.\n", strategy.toString());
+                client.checkpoint = null;
+                resumeFile = null;
+            }
+
+            SubgoalSolver subgoals = null;
+            Portfolio portfolio = null;
+            NestedMonteCarlo nmcs = null;
+            try {
+                if (nmcsLevel > 0) {
+                    nmcs = new NestedMonteCarlo(client, nmcsLevel, nmcsTimeLimit);
+                    System.err.format("Search starting with %s.\n", nmcs.toString());
+                    solution = nmcs.solve();
+                } else if (portfolioConfigs != null) {
+                    portfolio = new Portfolio(client, portfolioConfigs);
+                    solution = portfolio.solve();
+                    strategy = portfolio.winner();
+                } else if (subgoalLimit > 0) {
+                    subgoals = new SubgoalSolver(client, strategy, subgoalLimit);
+                    solution = subgoals.solve();
+                } else if (resumeFile != null && Checkpoint.restore(resumeFile, client, strategy)) {
+                    Node goal = client.Search(strategy, client.goals, 0);
+                    solution = goal == null ? null : goal.extractPlan();
+                } else {
+                    solution = client.Search(strategy);
+                }
+            } catch (OutOfMemoryError ex) {
+                System.err.println("Maximum memory usage exceeded.");
+                solution = null;
+            }
+            String status;
+            if (nmcs != null) {
+                status = nmcs.searchStatus();
+            } else if (portfolio != null) {
+                status = portfolio.searchStatus();
+            } else if (subgoals != null) {
+                status = subgoals.searchStatus();
+            } else {
+                status = strategy.searchStatus();
+            }
+
+            if (solution == null) {
+                System.err.println(status);
+                System.err.println("Unable to solve level.");
+                System.exit(0);
+            }
+
+            // With a portfolio, strategy is the configuration that found the plan.
+            String solvedBy = nmcs != null ? nmcs.toString() : subgoals != null ? subgoals.toString() : strategy.toString();
+            System.err.println("\nSummary for " + solvedBy);
             System.err.println("Found solution of length " + solution.size());
-            System.err.println(strategy.searchStatus());
+            System.err.println(status);
 
+            if (cache != null) {
+                // Macro actions skip intermediate states and subgoals split the search, so optimal strategies may
+                // then miss the shortest plan.
+                boolean optimal = strategy != null && strategy.isOptimal() && client.analysis == null && subgoals == null;
+                cache.store(client, solution, solvedBy, optimal);
+            }
+        }
+
+        if (pipelineWindow > 0) {
+            // Our own unflushed stream, so the pipeline decides when actions actually leave the process.
+            PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)), false);
+            new PlanPipeline(solution, serverMessages, out, pipelineWindow).execute();
+        } else {
             for (Node n : solution) {
                 String act = n.action.toString();
                 System.out.println(act);
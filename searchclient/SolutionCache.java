@@ -0,0 +1,167 @@
+package searchclient;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedList;
+import java.util.List;
+
+/** SolutionCache stores solved plans on disk, one file per level, so repeated runs of a level skip the search.
+ *
+ * Files are named by a SHA-256 hash of the parsed level (dimensions, walls, goals, boxes and agent position), so a
+ * level is recognised by its content rather than its file name. A plan is stored as one byte per action, the index
+ * of the action in Command.EVERY, together with the name of the strategy that found it and whether that strategy
+ * is optimal.
+ */
+public class SolutionCache {
+    private static final int MAGIC = 0x53435043; // "SCPC"
+    private static final byte VERSION = 1;
+
+    private final File directory;
+
+    public SolutionCache(File directory) {
+        this.directory = directory;
+    }
+
+    /** A plan read back from the cache together with its metadata. */
+    public static class Entry {
+        public final String strategy;
+        public final boolean optimal;
+        public final Command[] commands;
+
+        public Entry(String strategy, boolean optimal, Command[] commands) {
+            this.strategy = strategy;
+            this.optimal = optimal;
+            this.commands = commands;
+        }
+    }
+
+    public static String levelKey(SearchClient client) {
+        Node initial = client.initialState;
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+        Level level = client.level;
+        digest.update(String.format("%d %d %d %d\n", level.maxRow, level.maxCol, level.row(initial.agent),
+                level.col(initial.agent)).getBytes(StandardCharsets.US_ASCII));
+        for (int cell = 0; cell < level.cells; cell++) {
+            digest.update(level.walls[cell] ? (byte) '+' : (byte) ' ');
+            digest.update((byte) client.goals[cell]);
+            digest.update((byte) initial.boxes[cell]);
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private File fileFor(String key) {
+        return new File(this.directory, key + ".plan");
+    }
+
+    public Entry read(String key) throws IOException {
+        File file = this.fileFor(key);
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+                System.err.println("Ignoring solution cache file in unknown format: " + file);
+                return null;
+            }
+            boolean optimal = in.readBoolean();
+            String strategy = in.readUTF();
+            Command[] commands = new Command[in.readInt()];
+            for (int i = 0; i < commands.length; i++) {
+                int index = in.readUnsignedByte();
+                if (index >= Command.EVERY.length) {
+                    System.err.println("Ignoring corrupt solution cache file: " + file);
+                    return null;
+                }
+                commands[i] = Command.EVERY[index];
+            }
+            return new Entry(strategy, optimal, commands);
+        }
+    }
+
+    /**
+     * Looks up a plan for the client's level and replays it from the initial state.
+     * Returns null if there is no entry, the stored plan does not apply to the level, or requireOptimal is set and
+     * the stored plan was not found by an optimal strategy.
+     */
+    public LinkedList<Node> lookup(SearchClient client, boolean requireOptimal) throws IOException {
+        Entry entry = this.read(levelKey(client));
+        if (entry == null || (requireOptimal && !entry.optimal)) {
+            return null;
+        }
+        LinkedList<Node> plan = new LinkedList<>();
+        Node n = client.initialState;
+        for (Command c : entry.commands) {
+            n = n.childFor(c);
+            if (n == null) {
+                System.err.println("Ignoring cached solution that is not applicable to this level.");
+                return null;
+            }
+            plan.add(n);
+        }
+        if (!n.isGoalState(client.goals)) {
+            System.err.println("Ignoring cached solution that does not solve this level.");
+            return null;
+        }
+        System.err.format("Using cached solution of length %d found by %s%s.\n", entry.commands.length, entry.strategy,
+                entry.optimal ? " (optimal)" : "");
+        return plan;
+    }
+
+    /**
+     * Stores plan for the client's level unless the cache already has a plan that is at least as good:
+     * an optimal plan is only replaced by a shorter one, and a non-optimal plan never replaces an optimal one.
+     */
+    public void store(SearchClient client, List<Node> plan, String strategy, boolean optimal) throws IOException {
+        String key = levelKey(client);
+        Entry existing = this.read(key);
+        if (existing != null) {
+            if (existing.optimal && !optimal) {
+                return;
+            }
+            if (existing.commands.length <= plan.size() && (existing.optimal || !optimal)) {
+                return;
+            }
+        }
+
+        if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+            throw new IOException("Unable to create solution cache directory " + this.directory);
+        }
+        // Write to a temporary file first so an interrupted run never leaves a truncated entry behind.
+        File file = this.fileFor(key);
+        File tmp = new File(this.directory, key + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeBoolean(optimal);
+            out.writeUTF(strategy);
+            out.writeInt(plan.size());
+            for (Node n : plan) {
+                out.writeByte(Command.indexOf(n.action));
+            }
+        }
+        if (!tmp.renameTo(file)) {
+            file.delete();
+            if (!tmp.renameTo(file)) {
+                throw new IOException("Unable to write solution cache file " + file);
+            }
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package searchclient;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+/** Solver runs one search as a library call, for programs that embed the client instead of talking to the server.
+ *
+ * It takes a parsed level, strategy arguments as on the command line and optional limits, and returns a Result with
+ * the plan and statistics instead of printing them. It never exits the JVM, and the only output is the occasional
+ * notice some strategies write to standard error: beam search widening its beam, enforced hill-climbing falling back
+ * on best-first search, SMA* reaching its heap budget. Several solvers may run at the same time on different threads,
+ * on the same level or on different ones: each runs its search on its own SearchClient (see
+ * SearchClient(SearchClient)), from its own copy of the initial state, with its own strategy, heuristic and random
+ * generator.
+ *   SearchClient level = Solver.parseLevel(text);
+ *   Solver solver = new Solver(level, "-wastar", "5", "-macros");
+ *   solver.setTimeLimit(10000);
+ *   Solver.Result result = solver.solve();
+ * Another thread may call cancel at any time; the search stops within 1000 expansions and solve returns a CANCELLED
+ * result. The limits are checked equally often.
+ *
+ * The memory budget is given as a number of stored nodes (explored and frontier), as the heap is shared by every
+ * search in the JVM and cannot be measured per search. Running out of heap is reported as OUT_OF_MEMORY.
+ */
+public class Solver {
+    public enum Outcome {
+        SOLVED, UNSOLVABLE, CANCELLED, TIME_LIMIT, NODE_LIMIT, OUT_OF_MEMORY
+    }
+
+    public static class Result {
+        public final Outcome outcome;
+        // The actions of the plan; empty unless outcome is SOLVED.
+        public final List<Command> plan;
+        public final int explored;
+        public final int generated;
+        public final long timeMillis;
+        public final String strategy;
+
+        Result(Outcome outcome, List<Command> plan, int explored, int generated, long timeMillis, String strategy) {
+            this.outcome = outcome;
+            this.plan = plan;
+            this.explored = explored;
+            this.generated = generated;
+            this.timeMillis = timeMillis;
+            this.strategy = strategy;
+        }
+
+        public boolean isSolved() {
+            return this.outcome == Outcome.SOLVED;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d actions, %,d explored, %,d generated, %3.2f s, %s", this.outcome,
+                    this.plan.size(), this.explored, this.generated, this.timeMillis / 1000f, this.strategy);
+        }
+    }
+
+    /**
+     * Called every 1000 expansions on the thread running solve.
+     */
+    public interface Progress {
+        void report(int explored, int frontier, long elapsedMillis);
+    }
+
+    // The strategy arguments of SearchClient.chooseStrategy.
+    private static final Set<String> STRATEGIES = Set.of("-bfs", "-dfs", "-astar", "-wastar", "-greedy", "-peastar",
+            "-multiqueue", "-ehc", "-beam", "-smastar");
+
+    private final SearchClient client;
+    private final String strategyArg;
+    private final String strategyParam;
+
+    private long timeLimit = 0;
+    private long nodeLimit = 0;
+    private Progress progress = null;
+
+    private volatile boolean cancelled = false;
+    private volatile Strategy strategy = null;
+    private Outcome stopped = null;
+
+    /**
+     * A solver for level using the strategy given by args, e.g. "-astar" or "-beam", "100:10000"; the default is -bfs.
+     * Besides the strategy, "-macros" and "-delta [interval]" are accepted as on the command line; note that -delta
+     * changes the level and so applies to every search on it. Throws IllegalArgumentException for the other arguments
+     * of SearchClient, which do not run a single search.
+     */
+    public Solver(SearchClient level, String... args) {
+        this.client = new SearchClient(level);
+        String strategyArg = null;
+        String strategyParam = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i].toLowerCase()) {
+                case "-delta":
+                    int deltaInterval = Level.DEFAULT_DELTA_INTERVAL;
+                    if (i + 1 < args.length && args[i + 1].matches("[0-9]+")) {
+                        deltaInterval = Integer.parseInt(args[++i]);
+                    }
+                    this.client.level.useDeltaEncoding(deltaInterval);
+                    break;
+                case "-macros":
+                    this.client.analysis = new LevelAnalysis(this.client.level, this.client.goals);
+                    break;
+                case "-pipeline":
+                case "-cache":
+                case "-subgoals":
+                case "-portfolio":
+                case "-nmcs":
+                case "-checkpoint":
+                case "-resume":
+                case "-auto":
+                    throw new IllegalArgumentException("Solver does not support " + args[i]);
+                default:
+                    if (!STRATEGIES.contains(args[i].toLowerCase())) {
+                        throw new IllegalArgumentException("Unknown argument: " + args[i]);
+                    }
+                    if (strategyArg != null) {
+                        throw new IllegalArgumentException("More than one strategy: " + strategyArg + " and " + args[i]);
+                    }
+                    strategyArg = args[i].toLowerCase();
+                    if (i + 1 < args.length && !args[i + 1].startsWith("-")) {
+                        strategyParam = args[++i];
+                    }
+            }
+        }
+        this.strategyArg = strategyArg != null ? strategyArg : "-bfs";
+        this.strategyParam = strategyParam;
+    }
+
+    /**
+     * Parses a level in the server's format, e.g. the contents of a .lvl file.
+     */
+    public static SearchClient parseLevel(String text) throws Exception {
+        return new SearchClient(new BufferedReader(new StringReader(text.replace("\r", "") + "\n\n")));
+    }
+
+    /**
+     * Stops the search after this many milliseconds; 0, the default, means no limit.
+     */
+    public void setTimeLimit(long millis) {
+        this.timeLimit = millis;
+    }
+
+    /**
+     * Stops the search once it stores more than this many nodes; 0, the default, means no limit.
+     */
+    public void setNodeLimit(long nodes) {
+        this.nodeLimit = nodes;
+    }
+
+    public void setProgress(Progress progress) {
+        this.progress = progress;
+    }
+
+    /**
+     * Asks the search to stop; safe to call from any thread, before or during solve.
+     */
+    public void cancel() {
+        this.cancelled = true;
+        Strategy running = this.strategy;
+        if (running != null) {
+            running.cancel();
+        }
+    }
+
+    // Called by Search every 1000 iterations: reports progress and stops the search when a limit is reached.
+    private void check(Strategy s) {
+        long elapsed = (long) (s.timeSpent() * 1000);
+        if (this.progress != null) {
+            this.progress.report(s.countExplored(), s.countFrontier(), elapsed);
+        }
+        if (this.timeLimit > 0 && elapsed >= this.timeLimit) {
+            this.stop(s, Outcome.TIME_LIMIT);
+        } else if (this.nodeLimit > 0 && (long) s.countExplored() + s.countFrontier() > this.nodeLimit) {
+            this.stop(s, Outcome.NODE_LIMIT);
+        }
+    }
+
+    private void stop(Strategy s, Outcome outcome) {
+        if (this.stopped == null) {
+            this.stopped = outcome;
+        }
+        s.cancel();
+    }
+
+    /**
+     * Runs the search on the calling thread and returns its result. A solver runs at most one search at a time.
+     */
+    public synchronized Result solve() throws Exception {
+        this.stopped = null;
+        Strategy s = SearchClient.chooseStrategy(this.strategyArg, this.strategyParam, this.client);
+        this.strategy = s;
+        if (this.cancelled) {
+            s.cancel();
+        }
+        this.client.progress = this::check;
+
+        Node goal = null;
+        Outcome outcome;
+        try {
+            goal = this.client.Search(s, this.client.initialState, this.client.goals, 0);
+            if (goal != null) {
+                outcome = Outcome.SOLVED;
+            } else if (this.stopped != null) {
+                outcome = this.stopped;
+            } else if (s.isCancelled()) {
+                outcome = Outcome.CANCELLED;
+            } else {
+                outcome = Outcome.UNSOLVABLE;
+            }
+        } catch (OutOfMemoryError ex) {
+            outcome = Outcome.OUT_OF_MEMORY;
+        } finally {
+            this.strategy = null;
+        }
+
+        List<Command> plan = Collections.emptyList();
+        if (goal != null) {
+            LinkedList<Node> nodes = goal.extractPlan();
+            plan = new ArrayList<>(nodes.size());
+            for (Node n : nodes) {
+                plan.add(n.action);
+            }
+        }
+        return new Result(outcome, plan, s.countExplored(), s.countExplored() + s.countFrontier(),
+                (long) (s.timeSpent() * 1000), s.toString());
+    }
+}
@@ -0,0 +1,240 @@
+package searchclient;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.PushbackInputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** SolverDaemon keeps one JVM running and solves levels for DaemonClient, so that runs after the first skip JVM
+ * startup, class loading and JIT warm-up, and levels seen before skip parsing and the distance tables.
+ *
+ * It listens on a port of the loopback interface. A connection starts with one line holding the Solver arguments
+ * (the strategy, -macros), after which the daemon speaks the server's protocol over it, exactly as
+ * SearchClient does over standard input and output: it reads the level up to the empty line, sends the plan one
+ * action per line and reads the server's answer to each. DaemonClient relays that between the server and the socket:
+ *   $ java searchclient.SolverDaemon -port 6543 -warmup levels/SAD2.lvl
+ *   $ java -jar server.jar -l levels/SAD1.lvl -c "java searchclient.DaemonClient -port 6543 -astar" -g 50 -t 300
+ *
+ * Parsed levels are kept by their text, least recently used first out, and with them their Level and its distance
+ * table (see Level.distances). Every connection is served on its own thread, each search with its own Solver. No
+ * search runs from a cached initial state: every Solver starts from a copy of it (see SearchClient(SearchClient)),
+ * so the heuristic values and box caches of a finished search are not kept alive by the cache, and connections on
+ * the same level do not write to the same node. -delta is refused, as it changes the Level for every connection
+ * sharing it.
+ *
+ * A search stops after a time limit (300 seconds by default, -timeout to change it), and as soon as the connection
+ * closes, which is what happens when the server gives up on DaemonClient and kills it; otherwise abandoned searches
+ * would pile up in the daemon's heap.
+ */
+public class SolverDaemon {
+    public static final int DEFAULT_PORT = 6543;
+    public static final int DEFAULT_CACHE_SIZE = 16;
+    public static final int DEFAULT_TIME_LIMIT = 300;
+    // How often a search checks whether its connection is still open.
+    private static final long CONNECTION_CHECK_MS = 1000;
+
+    private final int cacheSize;
+    private final Map<String, SearchClient> levels;
+    private long timeLimit = DEFAULT_TIME_LIMIT * 1000L;
+
+    public SolverDaemon(int cacheSize) {
+        this.cacheSize = cacheSize;
+        this.levels = new LinkedHashMap<String, SearchClient>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SearchClient> eldest) {
+                return this.size() > SolverDaemon.this.cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Stops every search after this many milliseconds; 0 means no limit.
+     */
+    public void setTimeLimit(long millis) {
+        this.timeLimit = millis;
+    }
+
+    /**
+     * The parsed level for text, from the cache if it is there. Only pass it to a Solver, which copies its initial
+     * state, rather than search from it directly.
+     */
+    public SearchClient level(String text) throws Exception {
+        synchronized (this.levels) {
+            SearchClient level = this.levels.get(text);
+            if (level != null) {
+                return level;
+            }
+        }
+        SearchClient level = Solver.parseLevel(text);
+        synchronized (this.levels) {
+            // Another connection may have parsed the same level meanwhile; keep the first, whose tables may be built.
+            SearchClient first = this.levels.putIfAbsent(text, level);
+            return first != null ? first : level;
+        }
+    }
+
+    // The level text up to the empty line that ends it, in the form that is the key of the cache.
+    private static String readLevel(BufferedReader in) throws IOException {
+        StringBuilder text = new StringBuilder();
+        String line = in.readLine();
+        while (line != null && !line.equals("")) {
+            text.append(line).append('\n');
+            line = in.readLine();
+        }
+        return text.toString();
+    }
+
+    // Whether the other end has closed the connection. Anything it sent is pushed back for the reader.
+    private static boolean closed(Socket socket, PushbackInputStream in) {
+        try {
+            socket.setSoTimeout(1);
+            int b = in.read();
+            if (b < 0) {
+                return true;
+            }
+            in.unread(b);
+            return false;
+        } catch (SocketTimeoutException ex) {
+            return false;
+        } catch (IOException ex) {
+            return true;
+        } finally {
+            try {
+                socket.setSoTimeout(0);
+            } catch (SocketException ex) {
+                // Closed meanwhile; the next read will tell.
+            }
+        }
+    }
+
+    /**
+     * Serves one connection: reads the arguments and the level, solves it and plays the plan like SearchClient.
+     */
+    public void serve(Socket socket) throws Exception {
+        try (Socket s = socket) {
+            PushbackInputStream raw = new PushbackInputStream(s.getInputStream());
+            BufferedReader in = new BufferedReader(new InputStreamReader(raw, StandardCharsets.UTF_8));
+            PrintStream out = new PrintStream(s.getOutputStream(), true, "UTF-8");
+            String argLine = in.readLine();
+            if (argLine == null) {
+                return;
+            }
+            String[] args = argLine.trim().isEmpty() ? new String[0] : argLine.trim().split("\\s+");
+            if (Arrays.stream(args).anyMatch(a -> a.equalsIgnoreCase("-delta"))) {
+                System.err.format("[%s] refused: -delta would change the level for every connection.\n", argLine);
+                return;
+            }
+
+            long start = System.currentTimeMillis();
+            SearchClient level = this.level(readLevel(in));
+            Solver solver = new Solver(level, args);
+            solver.setTimeLimit(this.timeLimit);
+            // The server sends nothing during the search, so the only thing to notice is the connection closing.
+            long[] lastCheck = { 0 };
+            solver.setProgress((explored, frontier, elapsed) -> {
+                if (elapsed - lastCheck[0] >= CONNECTION_CHECK_MS) {
+                    lastCheck[0] = elapsed;
+                    if (closed(s, raw)) {
+                        solver.cancel();
+                    }
+                }
+            });
+            Solver.Result result = solver.solve();
+            System.err.format("[%s] %s (%d ms in all)\n", argLine, result, System.currentTimeMillis() - start);
+            if (!result.isSolved()) {
+                return;
+            }
+            for (Command c : result.plan) {
+                out.println(c.toString());
+                String response = in.readLine();
+                if (response == null) {
+                    break;
+                }
+                if (response.contains("false")) {
+                    System.err.format("Server responsed with %s to the inapplicable action: %s\n", response, c);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Solves each level once with the strategies most runs use, so that their code is compiled before the first
+     * connection and the levels are in the cache.
+     */
+    public void warmUp(File levelFile) throws Exception {
+        SearchClient level;
+        try (BufferedReader in = Files.newBufferedReader(levelFile.toPath(), StandardCharsets.UTF_8)) {
+            level = this.level(readLevel(in));
+        }
+        for (String strategy : new String[] { "-astar", "-wastar", "-greedy", "-bfs" }) {
+            Solver solver = new Solver(level, strategy);
+            solver.setTimeLimit(10000);
+            System.err.format("Warm-up on %s: %s\n", levelFile, solver.solve());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = DEFAULT_PORT;
+        int cacheSize = DEFAULT_CACHE_SIZE;
+        int timeLimit = DEFAULT_TIME_LIMIT;
+        List<File> warmUp = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-port":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "-cache":
+                    cacheSize = Integer.parseInt(args[++i]);
+                    break;
+                case "-warmup":
+                    warmUp.add(new File(args[++i]));
+                    break;
+                case "-timeout":
+                    timeLimit = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    System.err.println("Unknown argument: " + args[i]);
+                    System.err.println("Usage: java searchclient.SolverDaemon [-port <port>] [-cache <levels>] [-timeout <seconds>] [-warmup <level>]...");
+                    System.exit(2);
+            }
+        }
+
+        SolverDaemon daemon = new SolverDaemon(cacheSize);
+        daemon.setTimeLimit(timeLimit * 1000L);
+        for (File f : warmUp) {
+            daemon.warmUp(f);
+        }
+        try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            System.err.format("SolverDaemon listening on %s.\n", server.getLocalSocketAddress());
+            while (true) {
+                Socket socket = server.accept();
+                Thread t = new Thread(() -> {
+                    try {
+                        daemon.serve(socket);
+                    } catch (OutOfMemoryError ex) {
+                        System.err.println("Maximum memory usage exceeded.");
+                    } catch (Exception ex) {
+                        System.err.println("Connection failed: " + ex);
+                    }
+                }, "SolverDaemon-" + socket.getPort());
+                t.setDaemon(true);
+                t.start();
+            }
+        }
+    }
+}
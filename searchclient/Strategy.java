@@ -1,8 +1,16 @@
 package searchclient;
 
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.PriorityQueue;
+import java.util.TreeSet;
 
 import searchclient.Memory;
 import searchclient.NotImplementedException;
@@ -10,6 +18,7 @@ import searchclient.NotImplementedException;
 public abstract class Strategy {
 	private HashSet<Node> explored;
 	private final long startTime;
+	private volatile boolean cancelled = false;
 
 	public Strategy() {
 		this.explored = new HashSet<Node>();
@@ -28,6 +37,30 @@ public abstract class Strategy {
 		return this.explored.size();
 	}
 
+	// Forgets all explored nodes, for strategies that restart their search.
+	protected void clearExplored() {
+		this.explored.clear();
+	}
+
+	/**
+	 * The explored nodes, for writing a checkpoint; see Checkpoint.
+	 */
+	public Collection<Node> exploredNodes() {
+		return this.explored;
+	}
+
+	/**
+	 * The frontier nodes, in an order that rebuilds the same frontier when they are passed to addToFrontier, or null
+	 * for strategies whose state is more than a frontier, which therefore do not support checkpoints.
+	 */
+	public Collection<Node> frontierNodes() {
+		return null;
+	}
+
+	public boolean supportsCheckpoint() {
+		return this.frontierNodes() != null;
+	}
+
 	public String searchStatus() {
 		return String.format("#Explored: %,6d, #Frontier: %,6d, #Generated: %,6d, Time: %3.2f s \t%s", this.countExplored(), this.countFrontier(), this.countExplored()+this.countFrontier(), this.timeSpent(), Memory.stringRep());
 	}
@@ -36,12 +69,61 @@ public abstract class Strategy {
 		return (System.currentTimeMillis() - this.startTime) / 1000f;
 	}
 
+	/**
+	 * Asks a search running with this strategy, possibly on another thread, to stop at its next iteration.
+	 */
+	public void cancel() {
+		this.cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return this.cancelled;
+	}
+
+	/**
+	 * Whether plans found by this strategy are shortest plans. Used to decide which cached solution to keep. Only
+	 * breadth-first search qualifies: the heuristics are not admissible, so A* may return longer plans too.
+	 */
+	public boolean isOptimal() {
+		return false;
+	}
+
+	/**
+	 * Whether Search may test successors for the goal as they are generated rather than when they are expanded.
+	 * Only safe for strategies that would expand the successors in generation order anyway, as for breadth-first
+	 * search, where it saves expanding most of the last layer.
+	 */
+	public boolean earlyGoalTest() {
+		return false;
+	}
+
+	/**
+	 * Returns a new, empty strategy of the same kind that searches for the given goals.
+	 */
+	public Strategy newInstance(char[] goals) {
+		throw new NotImplementedException();
+	}
+
+	/**
+	 * Called with all successors of parent before they are offered to the frontier, so strategies that order by a
+	 * heuristic can evaluate the siblings together. Successors removed from children are not offered to the frontier.
+	 */
+	public void evaluateChildren(Node parent, List<Node> children) {
+	}
+
 	public abstract Node getAndRemoveLeaf();
 
 	public abstract void addToFrontier(Node n);
 
 	public abstract boolean inFrontier(Node n);
 
+	/**
+	 * Called with a successor that is equal to a node already in the frontier. Strategies that order by path cost
+	 * keep whichever of the two was reached by the shorter path; by default n is dropped.
+	 */
+	public void updateFrontier(Node n) {
+	}
+
 	public abstract int countFrontier();
 
 	public abstract boolean frontierIsEmpty();
@@ -59,6 +141,11 @@ public abstract class Strategy {
 			frontierSet = new HashSet<Node>();
 		}
 
+		@Override
+		public Strategy newInstance(char[] goals) {
+			return new StrategyBFS();
+		}
+
 		@Override
 		public Node getAndRemoveLeaf() {
 			Node n = frontier.pollFirst();
@@ -72,6 +159,11 @@ public abstract class Strategy {
 			frontierSet.add(n);
 		}
 
+		@Override
+		public Collection<Node> frontierNodes() {
+			return frontier;
+		}
+
 		@Override
 		public int countFrontier() {
 			return frontier.size();
@@ -87,6 +179,16 @@ public abstract class Strategy {
 			return frontierSet.contains(n);
 		}
 
+		@Override
+		public boolean isOptimal() {
+			return true;
+		}
+
+		@Override
+		public boolean earlyGoalTest() {
+			return true;
+		}
+
 		@Override
 		public String toString() {
 			return "Breadth-first Search";
@@ -104,6 +206,11 @@ public abstract class Strategy {
 			frontierSet = new HashSet<Node>();
 		}
 
+		@Override
+		public Strategy newInstance(char[] goals) {
+			return new StrategyDFS();
+		}
+
 		@Override
 		public Node getAndRemoveLeaf() {
 			Node n = frontier.pollFirst();
@@ -117,6 +224,14 @@ public abstract class Strategy {
 			frontierSet.add(n);
 		}
 
+		@Override
+		public Collection<Node> frontierNodes() {
+			// addToFrontier pushes onto the top of the stack, so the top has to come last.
+			ArrayList<Node> nodes = new ArrayList<Node>(frontier.size());
+			frontier.descendingIterator().forEachRemaining(nodes::add);
+			return nodes;
+		}
+
 		@Override
 		public int countFrontier() {
 			return frontier.size();
@@ -132,6 +247,11 @@ public abstract class Strategy {
 			return frontierSet.contains(n);
 		}
 
+		@Override
+		public boolean earlyGoalTest() {
+			return true;
+		}
+
 		@Override
 		public String toString() {
 			return "Depth-first Search";
@@ -139,29 +259,58 @@ public abstract class Strategy {
 	}
 
 	// Ex 3: Best-first Search uses a priority queue (Java contains no implementation of a Heap data structure)
+	// The frontier is an IndexedHeap, so a state found again by a shorter path is updated in place.
 	public static class StrategyBestFirst extends Strategy {
-		private Heuristic heuristic;
-		private PriorityQueue<Node> frontier;
-		private HashSet<Node> frontierSet;
+		protected Heuristic heuristic;
+		protected IndexedHeap frontier;
 
 		public StrategyBestFirst(Heuristic h) {
 			super();
 			this.heuristic = h;
-			frontier = new PriorityQueue<Node>(5,(a,b) -> heuristic.f(a) - heuristic.f(b));
-			frontierSet = new HashSet<>();
+			frontier = new IndexedHeap();
+		}
+
+		@Override
+		public Strategy newInstance(char[] goals) {
+			return new StrategyBestFirst(this.heuristic.withGoals(goals));
+		}
+
+		@Override
+		public void evaluateChildren(Node parent, List<Node> children) {
+			this.heuristic.hBatch(parent, children);
 		}
 
 		@Override
 		public Node getAndRemoveLeaf() {
-			Node n = frontier.poll();
-			frontierSet.remove(n);
-			return n;
+			return frontier.poll();
 		}
 
 		@Override
 		public void addToFrontier(Node n) {
-			frontier.add(n);
-			frontierSet.add(n);
+			frontier.add(n, key(n, heuristic.f(n)));
+		}
+
+		@Override
+		public void updateFrontier(Node n) {
+			// The key may grow: with f = h a smaller g leaves f as it is and only breaks ties differently.
+			if (n.g() < frontier.get(n).g()) {
+				frontier.replace(n, key(n, heuristic.f(n)));
+			}
+		}
+
+		// Orders by f, and among equal f prefers the deeper node, which is closer to a goal by the heuristic's own account.
+		protected static long key(Node n, int f) {
+			return ((long) f << 32) - n.g();
+		}
+
+		// The f that key(n, f) was made from.
+		protected static int fOf(Node n, long key) {
+			return (int) ((key + n.g()) >> 32);
+		}
+
+		@Override
+		public Collection<Node> frontierNodes() {
+			return frontier;
 		}
 
 		@Override
@@ -176,7 +325,7 @@ public abstract class Strategy {
 
 		@Override
 		public boolean inFrontier(Node n) {
-			return frontierSet.contains(n);
+			return frontier.contains(n);
 		}
 
 		@Override
@@ -221,4 +370,699 @@ public abstract class Strategy {
 			return "Best-first Search using " + this.heuristic.toString();
 		}*/
 	}
+
+	/**
+	 * Partial-expansion best-first search (PEA* when used with A*). Every frontier node has a stored F, at first its f.
+	 * Expanding a node only offers the children whose f is at most its stored F to the frontier. If any children were
+	 * held back, the node goes back into the frontier with the smallest f among them as its stored F, and it is only
+	 * marked explored once no children are held back. Children that would never be expanded are then never inserted,
+	 * which keeps the frontier small, at the cost of generating the children of a node more than once.
+	 */
+	public static class StrategyPEAStar extends StrategyBestFirst {
+		// The stored F of the node last returned by getAndRemoveLeaf.
+		private int storedF;
+		private int reinserted = 0;
+
+		public StrategyPEAStar(Heuristic h) {
+			super(h);
+		}
+
+		@Override
+		public Strategy newInstance(char[] goals) {
+			return new StrategyPEAStar(this.heuristic.withGoals(goals));
+		}
+
+		@Override
+		public Node getAndRemoveLeaf() {
+			long key = frontier.peekKey();
+			Node n = frontier.poll();
+			this.storedF = fOf(n, key);
+			return n;
+		}
+
+		@Override
+		public void addToExplored(Node n) {
+			// Postponed to evaluateChildren, which knows whether any children are held back.
+		}
+
+		@Override
+		public void evaluateChildren(Node parent, List<Node> children) {
+			super.evaluateChildren(parent, children);
+			int nextF = Integer.MAX_VALUE;
+			for (Iterator<Node> it = children.iterator(); it.hasNext();) {
+				int f = heuristic.f(it.next());
+				if (f > this.storedF) {
+					nextF = Math.min(nextF, f);
+					it.remove();
+				}
+			}
+			if (nextF == Integer.MAX_VALUE) {
+				super.addToExplored(parent);
+			} else {
+				frontier.add(parent, key(parent, nextF));
+				this.reinserted++;
+			}
+		}
+
+		@Override
+		public String searchStatus() {
+			return String.format("#Reinserted: %,6d, ", this.reinserted) + super.searchStatus();
+		}
+
+		@Override
+		public String toString() {
+			return "Partial-expansion Best-first Search using " + this.heuristic.toString();
+		}
+	}
+
+	/**
+	 * Beam search: the search proceeds one depth layer at a time and keeps only the width nodes with the lowest f of
+	 * every layer, so memory grows with width times depth rather than with the size of the state space. Plans are not
+	 * optimal, and a beam that is too narrow may lose every path to the goal. If maxWidth is larger than width, the
+	 * search then restarts from the initial state with twice the width, until it succeeds or maxWidth is exceeded.
+	 */
+	public static class StrategyBeam extends Strategy {
+		private final Heuristic heuristic;
+		private final int maxWidth;
+		private int width;
+		private int restarts = 0;
+
+		private Node root = null;
+		// The layer being expanded, and the best nodes of the next layer so far, worst first so it can be evicted.
+		private ArrayDeque<Node> layer = new ArrayDeque<Node>();
+		private PriorityQueue<Node> nextLayer;
+		private HashSet<Node> inBeam = new HashSet<Node>();
+
+		public StrategyBeam(Heuristic h, int width, int maxWidth) {
+			super();
+			this.heuristic = h;
+			this.width = width;
+			this.maxWidth = Math.max(width, maxWidth);
+			this.nextLayer = new PriorityQueue<Node>((a, b) -> Integer.compare(heuristic.f(b), heuristic.f(a)));
+		}
+
+		@Override
+		public Strategy newInstance(char[] goals) {
+			return new StrategyBeam(this.heuristic.withGoals(goals), this.width, this.maxWidth);
+		}
+
+		@Override
+		public void evaluateChildren(Node parent, List<Node> children) {
+			this.heuristic.hBatch(parent, children);
+		}
+
+		@Override
+		public Node getAndRemoveLeaf() {
+			if (this.layer.isEmpty() && this.nextLayer.isEmpty()) {
+				this.widen();
+			}
+			if (this.layer.isEmpty()) {
+				// Start on the next layer, best node first.
+				Node[] nodes = this.nextLayer.toArray(new Node[0]);
+				Arrays.sort(nodes, (a, b) -> Integer.compare(heuristic.f(a), heuristic.f(b)));
+				this.layer.addAll(Arrays.asList(nodes));
+				this.nextLayer.clear();
+			}
+			Node n = this.layer.pollFirst();
+			this.inBeam.remove(n);
+			return n;
+		}
+
+		private void widen() {
+			int wider = Math.min(this.width * 2, this.maxWidth);
+			System.err.format("Beam of width %,d lost all paths, restarting with width %,d.\n", this.width, wider);
+			this.width = wider;
+			this.restarts++;
+			this.clearExplored();
+			this.inBeam.clear();
+			this.layer.add(this.root);
+			this.inBeam.add(this.root);
+		}
+
+		@Override
+		public void addToFrontier(Node n) {
+			if (this.root == null) {
+				this.root = n;
+			}
+			if (this.nextLayer.size() >= this.width) {
+				Node worst = this.nextLayer.peek();
+				if (heuristic.f(n) >= heuristic.f(worst)) {
+					return;
+				}
+				this.nextLayer.poll();
+				this.inBeam.remove(worst);
+			}
+			this.nextLayer.add(n);
+			this.inBeam.add(n);
+		}
+
+		@Override
+		public int countFrontier() {
+			return this.layer.size() + this.nextLayer.size();
+		}
+
+		@Override
+		public boolean frontierIsEmpty() {
+			// An empty beam can still be widened.
+			return this.layer.isEmpty() && this.nextLayer.isEmpty() && this.width >= this.maxWidth;
+		}
+
+		@Override
+		public boolean inFrontier(Node n) {
+			return this.inBeam.contains(n);
+		}
+
+		@Override
+		public boolean earlyGoalTest() {
+			return true;
+		}
+
+		@Override
+		public String searchStatus() {
+			return String.format("#Width: %,6d, #Restarts: %,6d, ", this.width, this.restarts) + super.searchStatus();
+		}
+
+		@Override
+		public String toString() {
+			String widths = this.maxWidth > this.width ? String.format("%,d up to %,d", this.width, this.maxWidth)
+					: String.format("%,d", this.width);
+			return "Beam Search of width " + widths + " using " + this.heuristic.toString();
+		}
+	}
+
+	/**
+	 * Best-first search over several open lists at once, each ordered by a different evaluation, sharing one explored
+	 * set. Every node goes into the lists ordered by its number of unsatisfied goals, by h and by the box-goal matching
+	 * (see Heuristic.Matching); successors with a lower h than their parent, i.e. those reached by an action that
+	 * makes progress, also go into a list of preferred nodes ordered by h. A node taken from one list is removed from
+	 * the others.
+	 *
+	 * The lists take turns: each has a priority, the list with the lowest priority is expanded from next and its
+	 * priority goes up by one. Whenever a node is generated with a lower h than any before, the preferred list is
+	 * boosted by BOOST expansions, so the search follows progress while it lasts and falls back on round-robin on a
+	 * plateau, where one evaluation being stuck is made up for by the others. Plans are not optimal.
+	 */
+	public static class StrategyMultiQueue extends Strategy {
+		private static final int BOOST = 1000;
+		private static final String[] NAMES = { "goals", "h", "matching", "preferred" };
+		private static final int GOALS = 0;
+		private static final int H = 1;
+		private static final int MATCHING = 2;
+		private static final int PREFERRED = 3;
+
+		private final Heuristic heuristic;
+		private final Heuristic matching;
+		private final IndexedHeap[] queues = new IndexedHeap[NAMES.length];
+		private final int[] priority = new int[NAMES.length];
+		private final int[] expanded = new int[NAMES.length];
+		private int bestH = Integer.MAX_VALUE;
+		private int boosts = 0;
+		// h, matching value and parent's h of the children last passed to evaluateChildren, until they are offered to
+		// the frontier. Both heuristics cache their value on the node, so asking for it again would evaluate anew.
+		private final IdentityHashMap<Node, int[]> pending = new IdentityHashMap<Node, int[]>();
+
+		public StrategyMultiQueue(Heuristic h) {
+			super();
+			this.heuristic = h;
+			this.matching = new Heuristic.Matching(h, h.goals);
+			for (int i = 0; i < NAMES.length; i++) {
+				this.queues[i] = new IndexedHeap();
+			}
+		}
+
+		@Override
+		public Strategy newInstance(char[] goals) {
+			return new StrategyMultiQueue(this.heuristic.withGoals(goals));
+		}
+
+		@Override
+		public void evaluateChildren(Node parent, List<Node> children) {
+			int parentH = this.heuristic.h(parent);
+			this.pending.clear();
+			this.heuristic.hBatch(parent, children);
+			for (Node child : children) {
+				this.pending.put(child, new int[] { this.heuristic.h(child), 0, parentH });
+			}
+			this.matching.hBatch(parent, children);
+			for (Node child : children) {
+				this.pending.get(child)[1] = this.matching.h(child);
+			}
+		}
+
+		// The values of n from evaluateChildren, or evaluated now for a node that did not pass through it: the initial
+		// state, or a node restored from a checkpoint, whose parent Checkpoint.restore has rebuilt.
+		private int[] values(Node n) {
+			int[] values = this.pending.remove(n);
+			if (values != null) {
+				return values;
+			}
+			int parentH = n.parent != null ? this.heuristic.h(n.parent) : Integer.MAX_VALUE;
+			return new int[] { this.heuristic.h(n), this.matching.h(n), parentH };
+		}
+
+		// The key of n in list q. Keys do not depend on g, so that updateFrontier can swap in a node with a shorter path.
+		private long key(int q, Node n, int[] values) {
+			int goals = n.unsatisfiedGoalCount(this.heuristic.goals);
+			switch (q) {
+				case GOALS:
+					return ((long) goals << 32) + values[0];
+				case MATCHING:
+					return ((long) values[1] << 32) + values[0];
+				default:
+					return ((long) values[0] << 32) + goals;
+			}
+		}
+
+		@Override
+		public Node getAndRemoveLeaf() {
+			int next = -1;
+			for (int q = 0; q < NAMES.length; q++) {
+				if (!this.queues[q].isEmpty() && (next < 0 || this.priority[q] < this.priority[next])) {
+					next = q;
+				}
+			}
+			Node n = this.queues[next].poll();
+			for (int q = 0; q < NAMES.length; q++) {
+				if (q != next) {
+					this.queues[q].remove(n);
+				}
+			}
+			this.priority[next]++;
+			this.expanded[next]++;
+			return n;
+		}
+
+		@Override
+		public void addToFrontier(Node n) {
+			// Restored nodes only bring bestH back to where it was; boosting for each would flood the preferred list.
+			boolean generated = this.pending.containsKey(n);
+			int[] values = this.values(n);
+			for (int q = 0; q < PREFERRED; q++) {
+				this.queues[q].add(n, this.key(q, n, values));
+			}
+			if (values[0] < values[2]) {
+				this.queues[PREFERRED].add(n, this.key(PREFERRED, n, values));
+			}
+			if (values[0] < this.bestH) {
+				if (generated && this.bestH != Integer.MAX_VALUE) {
+					this.priority[PREFERRED] -= BOOST;
+					this.boosts++;
+				}
+				this.bestH = values[0];
+			}
+		}
+
+		@Override
+		public void updateFrontier(Node n) {
+			int[] values = this.values(n);
+			if (n.g() < this.queues[GOALS].get(n).g()) {
+				for (int q = 0; q < NAMES.length; q++) {
+					if (this.queues[q].contains(n)) {
+						this.queues[q].replace(n, this.key(q, n, values));
+					}
+				}
+			}
+		}
+
+		@Override
+		public Collection<Node> frontierNodes() {
+			// Every frontier node is in the goals list.
+			return this.queues[GOALS];
+		}
+
+		@Override
+		public int countFrontier() {
+			return this.queues[GOALS].size();
+		}
+
+		@Override
+		public boolean frontierIsEmpty() {
+			return this.queues[GOALS].isEmpty();
+		}
+
+		@Override
+		public boolean inFrontier(Node n) {
+			return this.queues[GOALS].contains(n);
+		}
+
+		@Override
+		public String searchStatus() {
+			StringBuilder s = new StringBuilder();
+			for (int q = 0; q < NAMES.length; q++) {
+				s.append(String.format("#By %s: %,6d, ", NAMES[q], this.expanded[q]));
+			}
+			return s.append(String.format("#Boosts: %,6d, ", this.boosts)).append(super.searchStatus()).toString();
+		}
+
+		@Override
+		public String toString() {
+			return "Multi-queue Best-first Search using " + this.heuristic.toString() + " and " + this.matching.toString();
+		}
+	}
+
+	/**
+	 * Enforced hill-climbing: from the current state, a breadth-first search runs until it generates a state with a
+	 * strictly lower h, or a goal state. The search then commits to that state: the breadth-first frontier and the
+	 * explored set are dropped and a new breadth-first search starts from it. Memory only holds the plateau around the
+	 * current state, and on levels where h falls steadily most searches end after a single expansion.
+	 *
+	 * Committing can lead into a dead end, from which no state with a lower h is reachable; the breadth-first search
+	 * then runs out. The search falls back on a complete best-first search with the same heuristic from the initial
+	 * state, as states discarded on the way may be needed. Plans are not optimal.
+	 */
+	public static class StrategyEHC extends Strategy {
+		private final Heuristic heuristic;
+		private final char[] goals;
+		private ArrayDeque<Node> frontier = new ArrayDeque<Node>();
+		private HashSet<Node> frontierSet = new HashSet<Node>();
+		private Node root = null;
+		// h of the state the current breadth-first search started from.
+		private int currentH = Integer.MAX_VALUE;
+		private int improvements = 0;
+		// Expansions so far, over all breadth-first searches and the fallback; the explored set only holds the last.
+		private int expanded = 0;
+		private StrategyBestFirst fallback = null;
+
+		public StrategyEHC(Heuristic h) {
+			super();
+			this.heuristic = h;
+			this.goals = h.goals;
+		}
+
+		@Override
+		public Strategy newInstance(char[] goals) {
+			return new StrategyEHC(this.heuristic.withGoals(goals));
+		}
+
+		@Override
+		public void evaluateChildren(Node parent, List<Node> children) {
+			if (this.fallback != null) {
+				this.fallback.evaluateChildren(parent, children);
+				return;
+			}
+			this.heuristic.hBatch(parent, children);
+			Node best = null;
+			int bestH = this.currentH;
+			for (Node child : children) {
+				if (child.isGoalState(this.goals)) {
+					best = child;
+					break;
+				}
+				int h = this.heuristic.h(child);
+				if (h < bestH) {
+					best = child;
+					bestH = h;
+				}
+			}
+			if (best != null) {
+				// Commit: the children left in the list are the only ones offered to the frontier.
+				children.clear();
+				children.add(best);
+				this.frontier.clear();
+				this.frontierSet.clear();
+				this.clearExplored();
+				this.currentH = this.heuristic.h(best);
+				this.improvements++;
+			}
+		}
+
+		@Override
+		public Node getAndRemoveLeaf() {
+			if (this.fallback == null && this.frontier.isEmpty()) {
+				System.err.format("Hill-climbing reached a dead end at h = %d, falling back on best-first search.\n", this.currentH);
+				this.fallback = new StrategyBestFirst(this.heuristic);
+				this.clearExplored();
+				this.fallback.addToFrontier(this.root);
+			}
+			if (this.fallback != null) {
+				return this.fallback.getAndRemoveLeaf();
+			}
+			Node n = this.frontier.pollFirst();
+			this.frontierSet.remove(n);
+			return n;
+		}
+
+		@Override
+		public void addToFrontier(Node n) {
+			if (this.root == null) {
+				this.root = n;
+				this.currentH = this.heuristic.h(n);
+			}
+			if (this.fallback != null) {
+				this.fallback.addToFrontier(n);
+				return;
+			}
+			this.frontier.addLast(n);
+			this.frontierSet.add(n);
+		}
+
+		@Override
+		public void updateFrontier(Node n) {
+			if (this.fallback != null) {
+				this.fallback.updateFrontier(n);
+			}
+		}
+
+		@Override
+		public void addToExplored(Node n) {
+			this.expanded++;
+			if (this.fallback != null) {
+				this.fallback.addToExplored(n);
+			} else {
+				super.addToExplored(n);
+			}
+		}
+
+		@Override
+		public boolean isExplored(Node n) {
+			return this.fallback != null ? this.fallback.isExplored(n) : super.isExplored(n);
+		}
+
+		@Override
+		public int countExplored() {
+			return this.expanded;
+		}
+
+		@Override
+		public int countFrontier() {
+			return this.fallback != null ? this.fallback.countFrontier() : this.frontier.size();
+		}
+
+		@Override
+		public boolean frontierIsEmpty() {
+			// An empty plateau search still has the fallback to go to.
+			return this.fallback != null && this.fallback.frontierIsEmpty();
+		}
+
+		@Override
+		public boolean inFrontier(Node n) {
+			return this.fallback != null ? this.fallback.inFrontier(n) : this.frontierSet.contains(n);
+		}
+
+		@Override
+		public String searchStatus() {
+			return String.format("#Improvements: %,6d, h: %,6d, %s", this.improvements, this.currentH,
+					this.fallback != null ? "Fallback, " : "") + super.searchStatus();
+		}
+
+		@Override
+		public String toString() {
+			return "Enforced Hill-climbing using " + this.heuristic.toString();
+		}
+	}
+
+	/**
+	 * Simplified memory-bounded A* (SMA*). At most maxNodes nodes are kept in memory, or, with a heap fraction, as many
+	 * as fit in that fraction of Memory.max(). When memory is full the open leaf with the highest f is forgotten and
+	 * its f is backed up into its parent. A parent whose children have all been forgotten becomes a leaf again, with
+	 * the lowest f it has forgotten, and regenerates its children when it is expanded again.
+	 *
+	 * Duplicate detection only covers the nodes currently in memory, so explored states may be searched again later.
+	 */
+	public static class StrategySMAStar extends Strategy {
+		private static final int INFINITE = Integer.MAX_VALUE;
+		// How many insertions go by between checks of the heap budget.
+		private static final int HEAP_CHECK_INTERVAL = 4096;
+
+		private static class Entry {
+			final Node node;
+			final Entry parent;
+			final long seq;
+			int f;
+			int children = 0;
+			int forgottenF = INFINITE;
+			boolean expanded = false;
+
+			Entry(Node node, Entry parent, int f, long seq) {
+				this.node = node;
+				this.parent = parent;
+				this.f = f;
+				this.seq = seq;
+			}
+		}
+
+		private final Heuristic heuristic;
+		private final double heapFraction;
+		private int maxNodes;
+
+		private final HashMap<Node, Entry> memory = new HashMap<>();
+		// Lowest f first; among equal f the deepest node first, so that last() is the shallowest worst leaf.
+		private final TreeSet<Entry> open = new TreeSet<>((a, b) -> {
+			if (a.f != b.f) {
+				return Integer.compare(a.f, b.f);
+			}
+			if (a.node.g() != b.node.g()) {
+				return Integer.compare(b.node.g(), a.node.g());
+			}
+			return Long.compare(a.seq, b.seq);
+		});
+
+		private Entry lastExpanded = null;
+		private long seq = 0;
+		private int expansions = 0;
+		private int forgotten = 0;
+
+		/**
+		 * Keeps at most maxNodes nodes in memory if maxNodes is positive, and otherwise uses at most heapFraction of the
+		 * maximum heap size.
+		 */
+		public StrategySMAStar(Heuristic h, int maxNodes, double heapFraction) {
+			super();
+			this.heuristic = h;
+			this.maxNodes = maxNodes > 0 ? maxNodes : INFINITE;
+			this.heapFraction = maxNodes > 0 ? 0 : heapFraction;
+		}
+
+		@Override
+		public Strategy newInstance(char[] goals) {
+			return new StrategySMAStar(this.heuristic.withGoals(goals), this.maxNodes == INFINITE ? 0 : this.maxNodes,
+					this.heapFraction);
+		}
+
+		@Override
+		public void evaluateChildren(Node parent, List<Node> children) {
+			this.heuristic.hBatch(parent, children);
+		}
+
+		// Finishes the previous expansion: prunes it if it produced no new children, then trims memory to the budget.
+		private void settle() {
+			if (this.lastExpanded != null) {
+				if (this.lastExpanded.children == 0) {
+					this.release(this.lastExpanded, INFINITE);
+				}
+				this.lastExpanded = null;
+			}
+			while (this.memory.size() > this.maxNodes && this.open.size() > 1) {
+				Entry worst = this.open.pollLast();
+				this.forgotten++;
+				this.release(worst, worst.f);
+			}
+		}
+
+		// Removes a node that is not on the open list from memory, backing f up into its parent.
+		private void release(Entry entry, int f) {
+			while (entry != null) {
+				this.memory.remove(entry.node);
+				Entry p = entry.parent;
+				if (p == null) {
+					return;
+				}
+				p.children--;
+				p.forgottenF = Math.min(p.forgottenF, f);
+				if (p.children > 0) {
+					return;
+				}
+				if (p.forgottenF == INFINITE) {
+					// Every successor of p is a dead end, so p is one as well.
+					entry = p;
+				} else {
+					// p becomes a leaf again and regenerates its forgotten successors when expanded.
+					p.f = p.forgottenF;
+					p.expanded = false;
+					this.open.add(p);
+					return;
+				}
+			}
+		}
+
+		@Override
+		public Node getAndRemoveLeaf() {
+			this.settle();
+			Entry best = this.open.pollFirst();
+			return best == null ? null : best.node;
+		}
+
+		@Override
+		public void addToExplored(Node n) {
+			Entry entry = this.memory.get(n);
+			entry.expanded = true;
+			entry.forgottenF = INFINITE;
+			this.lastExpanded = entry;
+			this.expansions++;
+		}
+
+		@Override
+		public boolean isExplored(Node n) {
+			Entry entry = this.memory.get(n);
+			return entry != null && entry.expanded;
+		}
+
+		@Override
+		public int countExplored() {
+			return this.expansions;
+		}
+
+		@Override
+		public void addToFrontier(Node n) {
+			// Every node added after an expansion is a successor of the expanded node, even when n.parent is not: the
+			// last node of a macro action has the intermediate nodes of the macro between them, which are not stored.
+			Entry parent = this.lastExpanded;
+			int f = this.heuristic.f(n);
+			if (parent != null) {
+				// Pathmax: f never decreases along a path.
+				f = Math.max(f, parent.f);
+				parent.children++;
+			}
+			Entry entry = new Entry(n, parent, f, this.seq++);
+			this.memory.put(n, entry);
+			this.open.add(entry);
+
+			if (this.heapFraction > 0 && this.seq % HEAP_CHECK_INTERVAL == 0
+					&& Memory.used() > this.heapFraction * Memory.max()) {
+				// Over the heap budget: settle for slightly fewer nodes than are in memory now.
+				this.maxNodes = Math.max(2, (int) (this.memory.size() * 0.9));
+				System.err.format("SMA* heap budget reached, keeping at most %,d nodes.\n", this.maxNodes);
+			}
+		}
+
+		@Override
+		public boolean inFrontier(Node n) {
+			Entry entry = this.memory.get(n);
+			return entry != null && !entry.expanded;
+		}
+
+		@Override
+		public int countFrontier() {
+			return this.open.size();
+		}
+
+		@Override
+		public boolean frontierIsEmpty() {
+			this.settle();
+			return this.open.isEmpty();
+		}
+
+		@Override
+		public String searchStatus() {
+			return String.format("#In memory: %,6d, #Forgotten: %,6d, ", this.memory.size(), this.forgotten)
+					+ super.searchStatus();
+		}
+
+		@Override
+		public String toString() {
+			String budget = this.maxNodes == INFINITE ? String.format("%.0f%% of heap", this.heapFraction * 100)
+					: String.format("%,d nodes", this.maxNodes);
+			return "SMA* (" + budget + ") using " + this.heuristic.toString();
+		}
+	}
 }
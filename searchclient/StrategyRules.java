@@ -0,0 +1,343 @@
+package searchclient;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/** StrategyRules picks the command-line arguments for a level from its LevelFeatures, for SearchClient -auto.
+ *
+ * A rules table has one rule per line: conditions on features, an arrow, and the arguments to use, e.g.
+ *   boxes<=4 corridor>0.35 -> -astar -macros
+ * The first rule whose conditions all hold is used, and a rule without conditions always holds. Lines starting with #
+ * are comments. Without a file, the table in DEFAULT_RULES is used.
+ *
+ * The table can be retrained. -benchmark runs a list of configurations on a set of levels and prints one CSV row per
+ * level and configuration with the level's features and the outcome; -train reads such a file and prints the rules
+ * of a small decision tree over the features that minimises the total time, counting a level that was not solved as
+ * twice the time limit:
+ *   $ java searchclient.StrategyRules -benchmark -configs "astar,wastar 5,greedy" -timeout 30 levels/*.lvl > bench.csv
+ *   $ java searchclient.StrategyRules -train bench.csv > rules.txt
+ *   $ java -jar server.jar -l levels/SAD1.lvl -c "java searchclient.SearchClient -auto rules.txt" -g 50 -t 300
+ */
+public class StrategyRules {
+    public static final String DEFAULT_CONFIGURATIONS = "bfs,astar,wastar 5,greedy,beam 100,peastar";
+    private static final int DEFAULT_TIME_LIMIT = 30;
+    // Depth of the trained decision tree, and the smallest number of levels in a leaf.
+    private static final int TREE_DEPTH = 2;
+    private static final int MIN_LEAF = 3;
+    // A split has to save at least this many seconds on the training levels, so timing noise does not make rules.
+    private static final double MIN_GAIN = 1.0;
+
+    // Trained with -benchmark -timeout 10 on the levels in levels/: 248 s in all, against 263 s for WA* alone.
+    private static final String DEFAULT_RULES = String.join("\n",
+            "boxdist<=8 -> -wastar 5",
+            "-> -beam 100");
+
+    private static final Pattern CONDITION = Pattern.compile("([a-z]+)(<=|>=|<|>)(-?[0-9.]+)");
+
+    private static class Condition {
+        final String feature;
+        final String op;
+        final double value;
+
+        Condition(String feature, String op, double value) {
+            this.feature = feature;
+            this.op = op;
+            this.value = value;
+        }
+
+        boolean holds(LevelFeatures f) {
+            double v = f.get(this.feature);
+            switch (this.op) {
+                case "<=":
+                    return v <= this.value;
+                case "<":
+                    return v < this.value;
+                case ">=":
+                    return v >= this.value;
+                default:
+                    return v > this.value;
+            }
+        }
+    }
+
+    private static class Rule {
+        final List<Condition> conditions = new ArrayList<>();
+        String[] args;
+        String text;
+    }
+
+    private final List<Rule> rules = new ArrayList<>();
+
+    public StrategyRules(Reader table) throws IOException {
+        BufferedReader in = new BufferedReader(table);
+        String line;
+        for (int number = 1; (line = in.readLine()) != null; number++) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            int arrow = line.indexOf("->");
+            if (arrow < 0) {
+                throw new IllegalArgumentException(String.format("Rule %d has no ->: %s", number, line));
+            }
+            Rule rule = new Rule();
+            for (String condition : line.substring(0, arrow).trim().split("\\s+")) {
+                if (condition.isEmpty() || condition.equals("*")) {
+                    continue;
+                }
+                Matcher m = CONDITION.matcher(condition);
+                if (!m.matches()) {
+                    throw new IllegalArgumentException(String.format("Rule %d has a bad condition: %s", number, condition));
+                }
+                if (!Arrays.asList(LevelFeatures.NAMES).contains(m.group(1))) {
+                    throw new IllegalArgumentException(String.format("Rule %d uses an unknown feature: %s", number, m.group(1)));
+                }
+                rule.conditions.add(new Condition(m.group(1), m.group(2), Double.parseDouble(m.group(3))));
+            }
+            String args = line.substring(arrow + 2).trim();
+            rule.args = args.isEmpty() ? new String[0] : args.split("\\s+");
+            rule.text = line;
+            this.rules.add(rule);
+        }
+    }
+
+    public static StrategyRules defaults() throws IOException {
+        return new StrategyRules(new StringReader(DEFAULT_RULES));
+    }
+
+    /**
+     * The rule that applies to a level with features f, or null if none does.
+     */
+    private Rule match(LevelFeatures f) {
+        for (Rule rule : this.rules) {
+            boolean holds = true;
+            for (Condition c : rule.conditions) {
+                holds &= c.holds(f);
+            }
+            if (holds) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The arguments for a level with features f; none if no rule applies, which leaves the choice to SearchClient.
+     */
+    public String[] choose(LevelFeatures f) {
+        Rule rule = this.match(f);
+        return rule == null ? new String[0] : rule.args;
+    }
+
+    /**
+     * Replaces -auto [rules file] in args with the arguments chosen for the client's level. They go where -auto was,
+     * so arguments given after it still take precedence.
+     */
+    public static String[] expand(String[] args, SearchClient client) throws IOException {
+        List<String> expanded = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].equalsIgnoreCase("-auto")) {
+                expanded.add(args[i]);
+                continue;
+            }
+            StrategyRules rules;
+            if (i + 1 < args.length && !args[i + 1].startsWith("-")) {
+                try (Reader table = new FileReader(args[++i])) {
+                    rules = new StrategyRules(table);
+                }
+            } else {
+                rules = defaults();
+            }
+            LevelFeatures features = new LevelFeatures(client);
+            Rule rule = rules.match(features);
+            System.err.format("Level features: %s\n", features);
+            System.err.format("Automatic selection: %s\n", rule == null ? "no rule applies" : rule.text);
+            if (rule != null) {
+                expanded.addAll(Arrays.asList(rule.args));
+            }
+        }
+        return expanded.toArray(new String[0]);
+    }
+
+    // Runs every configuration on every level in this JVM and prints the results as CSV.
+    private static void benchmark(List<String> levels, String configurations, int timeLimit) throws Exception {
+        System.out.println("level," + String.join(",", LevelFeatures.NAMES)
+                + ",config,outcome,plan,expanded,generated,time_ms,peak_mb");
+        for (String file : levels) {
+            String text = new String(Files.readAllBytes(new File(file).toPath()), StandardCharsets.UTF_8).replace("\r", "");
+            LevelFeatures features = new LevelFeatures(new SearchClient(new BufferedReader(new StringReader(text + "\n\n"))));
+            for (String config : configurations.split(",")) {
+                String[] words = config.trim().split("\\s+");
+                String strategyArg = "-" + words[0].replaceFirst("^-", "");
+                String strategyParam = words.length > 1 ? words[1] : null;
+                String result = LevelGenerator.solve(text.stripTrailing(), strategyArg, strategyParam, timeLimit);
+                System.out.format("%s,%s,%s,%s\n", new File(file).getName(), features.csv(),
+                        strategyArg + (strategyParam != null ? " " + strategyParam : ""), result);
+                System.out.flush();
+            }
+        }
+    }
+
+    // A level of the training set: its features and the cost of each configuration on it.
+    private static class Sample {
+        final double[] features = new double[LevelFeatures.NAMES.length];
+        final Map<String, Double> cost = new LinkedHashMap<>();
+    }
+
+    // Cost of configuration on samples, with a configuration that was not run counting as unsolved.
+    private static double cost(List<Sample> samples, String configuration, double unsolved) {
+        double total = 0;
+        for (Sample s : samples) {
+            total += s.cost.getOrDefault(configuration, unsolved);
+        }
+        return total;
+    }
+
+    private static String best(List<Sample> samples, List<String> configurations, double unsolved) {
+        String best = null;
+        for (String c : configurations) {
+            if (best == null || cost(samples, c, unsolved) < cost(samples, best, unsolved)) {
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Appends to rules the rules of a decision tree for samples, each with the conditions leading to it as prefix.
+     * Returns the cost of the tree.
+     */
+    private static double tree(List<Sample> samples, List<String> configurations, double unsolved, int depth,
+            String prefix, List<String> rules) {
+        String leaf = best(samples, configurations, unsolved);
+        double leafCost = cost(samples, leaf, unsolved);
+        int bestFeature = -1;
+        double bestThreshold = 0;
+        double bestCost = leafCost - MIN_GAIN;
+        for (int f = 0; depth > 0 && f < LevelFeatures.NAMES.length; f++) {
+            double[] values = new double[samples.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = samples.get(i).features[f];
+            }
+            Arrays.sort(values);
+            for (int i = MIN_LEAF - 1; i + MIN_LEAF < values.length; i++) {
+                if (values[i] == values[i + 1]) {
+                    continue;
+                }
+                double threshold = values[i];
+                List<Sample> left = new ArrayList<>();
+                List<Sample> right = new ArrayList<>();
+                for (Sample s : samples) {
+                    (s.features[f] <= threshold ? left : right).add(s);
+                }
+                double split = cost(left, best(left, configurations, unsolved), unsolved)
+                        + cost(right, best(right, configurations, unsolved), unsolved);
+                if (split < bestCost) {
+                    bestCost = split;
+                    bestFeature = f;
+                    bestThreshold = threshold;
+                }
+            }
+        }
+        if (bestFeature < 0) {
+            rules.add(String.format("%s-> %s", prefix, leaf));
+            return leafCost;
+        }
+        List<Sample> left = new ArrayList<>();
+        List<Sample> right = new ArrayList<>();
+        for (Sample s : samples) {
+            (s.features[bestFeature] <= bestThreshold ? left : right).add(s);
+        }
+        String name = LevelFeatures.NAMES[bestFeature];
+        String threshold = new BigDecimal(bestThreshold).round(new MathContext(4)).stripTrailingZeros().toPlainString();
+        // The right branch last, without its condition, so the table always ends with a rule that holds.
+        double cost = tree(left, configurations, unsolved, depth - 1, prefix + name + "<=" + threshold + " ", rules);
+        return cost + tree(right, configurations, unsolved, depth - 1, prefix, rules);
+    }
+
+    // Reads a -benchmark CSV and prints the rules trained on it.
+    private static void train(File results, int timeLimit) throws IOException {
+        List<String> lines = Files.readAllLines(results.toPath(), StandardCharsets.UTF_8);
+        List<String> header = Arrays.asList(lines.get(0).split(","));
+        Map<String, Sample> samples = new LinkedHashMap<>();
+        List<String> configurations = new ArrayList<>();
+        double longest = 0;
+        for (String line : lines.subList(1, lines.size())) {
+            String[] row = line.split(",");
+            Sample sample = samples.computeIfAbsent(row[header.indexOf("level")], level -> new Sample());
+            for (int f = 0; f < LevelFeatures.NAMES.length; f++) {
+                sample.features[f] = Double.parseDouble(row[header.indexOf(LevelFeatures.NAMES[f])]);
+            }
+            String config = row[header.indexOf("config")];
+            if (!configurations.contains(config)) {
+                configurations.add(config);
+            }
+            double time = Double.parseDouble(row[header.indexOf("time_ms")]) / 1000;
+            longest = Math.max(longest, time);
+            sample.cost.put(config, row[header.indexOf("outcome")].equals("solved") ? time : Double.NaN);
+        }
+        // Unsolved is twice the time limit, which defaults to the longest run in the file.
+        double unsolved = 2 * (timeLimit > 0 ? timeLimit : Math.ceil(longest));
+        for (Sample s : samples.values()) {
+            s.cost.replaceAll((config, cost) -> Double.isNaN(cost) ? unsolved : cost);
+        }
+
+        List<Sample> all = new ArrayList<>(samples.values());
+        List<String> rules = new ArrayList<>();
+        double cost = tree(all, configurations, unsolved, TREE_DEPTH, "", rules);
+        String single = best(all, configurations, unsolved);
+        System.out.format(Locale.ROOT, "# Trained on %d levels from %s: %.1f s in all, against %.1f s for %s alone.\n",
+                all.size(), results.getName(), cost, cost(all, single, unsolved), single);
+        for (String rule : rules) {
+            System.out.println(rule);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String mode = null;
+        String configurations = DEFAULT_CONFIGURATIONS;
+        int timeLimit = 0;
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i].toLowerCase()) {
+                case "-benchmark":
+                case "-train":
+                    mode = args[i].toLowerCase();
+                    break;
+                case "-configs":
+                    configurations = args[++i];
+                    break;
+                case "-timeout":
+                    timeLimit = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    files.add(args[i]);
+            }
+        }
+        if ("-benchmark".equals(mode) && !files.isEmpty()) {
+            benchmark(files, configurations, timeLimit > 0 ? timeLimit : DEFAULT_TIME_LIMIT);
+        } else if ("-train".equals(mode) && files.size() == 1) {
+            train(new File(files.get(0)), timeLimit);
+        } else {
+            System.err.println("Usage: java searchclient.StrategyRules -benchmark [-configs list] [-timeout seconds] <level files>");
+            System.err.println("   or: java searchclient.StrategyRules -train [-timeout seconds] <benchmark csv>");
+            System.exit(2);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package searchclient;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+
+import searchclient.Command.Dir;
+
+/** SubgoalSolver solves a level one goal cell at a time instead of with a single search.
+ *
+ * It first derives an order on the goal cells: a goal that is an articulation point of the free space (see
+ * LevelAnalysis) cuts off the goals behind it once a box sits on it, so those goals have to come first. Remaining
+ * ties are broken by putting goals far from the agent, which tend to lie at the end of dead ends, first.
+ *
+ * It then runs one bounded search per goal with a fresh copy of the given strategy. Each search starts from the
+ * state the previous one ended in and has to satisfy the new goal as well as all goals placed so far. If a
+ * subproblem cannot be solved within the expansion limit, the next candidate goal is tried instead, and when all
+ * candidates fail the previous subproblem is revisited. Plans are not optimal, but every subproblem is small.
+ */
+public class SubgoalSolver {
+    public static final int DEFAULT_EXPANSION_LIMIT = 100000;
+    // Number of candidate goals tried at each step before backtracking to the previous one.
+    private static final int MAX_ALTERNATIVES = 3;
+    // Total number of failed subproblems before giving up on the level.
+    private static final int MAX_FAILURES = 50;
+
+    private static class Goal {
+        final int cell;
+        final char letter;
+        final int distance;
+        final int index;
+        // Goals that must be satisfied before this one.
+        final ArrayList<Goal> before = new ArrayList<>();
+
+        Goal(int cell, char letter, int distance, int index) {
+            this.cell = cell;
+            this.letter = letter;
+            this.distance = distance;
+            this.index = index;
+        }
+    }
+
+    private final SearchClient client;
+    private final Strategy prototype;
+    private final int expansionLimit;
+    private final ArrayList<Goal> order;
+
+    private int subproblems = 0;
+    private int failures = 0;
+    private int explored = 0;
+    private final long startTime = System.currentTimeMillis();
+
+    public SubgoalSolver(SearchClient client, Strategy prototype, int expansionLimit) {
+        this.client = client;
+        this.prototype = prototype;
+        this.expansionLimit = expansionLimit;
+        this.order = this.deriveOrder();
+
+        StringBuilder s = new StringBuilder("Goal order:");
+        for (Goal g : this.order) {
+            s.append(String.format(" %c%s", g.letter, this.position(g)));
+        }
+        System.err.println(s);
+    }
+
+    private String position(Goal g) {
+        return String.format("(%d,%d)", this.client.level.row(g.cell), this.client.level.col(g.cell));
+    }
+
+    // Agent distances from the initial agent position, ignoring boxes. The blocked cell counts as a wall.
+    private int[] agentDistances(int blocked) {
+        Level level = this.client.level;
+        int[] distance = new int[level.cells];
+        Arrays.fill(distance, -1);
+        ArrayDeque<Integer> frontier = new ArrayDeque<>();
+        int start = this.client.initialState.agent;
+        distance[start] = 0;
+        frontier.add(start);
+        while (!frontier.isEmpty()) {
+            int cell = frontier.poll();
+            for (Dir d : Dir.values()) {
+                int next = level.neighbour(cell, d);
+                if (next < 0 || distance[next] >= 0 || next == blocked) {
+                    continue;
+                }
+                distance[next] = distance[cell] + 1;
+                frontier.add(next);
+            }
+        }
+        return distance;
+    }
+
+    private ArrayList<Goal> deriveOrder() {
+        char[] goals = this.client.goals;
+        LevelAnalysis analysis = this.client.analysis != null ? this.client.analysis
+                : new LevelAnalysis(this.client.level, goals);
+        int[] distance = this.agentDistances(-1);
+
+        ArrayList<Goal> all = new ArrayList<>();
+        for (int cell = 0; cell < goals.length; cell++) {
+            if (goals[cell] != 0) {
+                all.add(new Goal(cell, goals[cell], distance[cell], all.size()));
+            }
+        }
+
+        // A box on an articulation point cuts the agent off from the goals on the far side.
+        for (Goal g : all) {
+            if (!analysis.articulation[g.cell]) {
+                continue;
+            }
+            int[] blocked = this.agentDistances(g.cell);
+            for (Goal other : all) {
+                if (other != g && other.distance >= 0 && blocked[other.cell] < 0) {
+                    g.before.add(other);
+                }
+            }
+        }
+
+        // Topological order, farthest goal first among those whose predecessors are placed.
+        ArrayList<Goal> order = new ArrayList<>();
+        boolean[] placed = new boolean[all.size()];
+        while (order.size() < all.size()) {
+            Goal best = null;
+            int bestMissing = Integer.MAX_VALUE;
+            for (Goal g : all) {
+                if (placed[g.index]) {
+                    continue;
+                }
+                int missing = 0;
+                for (Goal b : g.before) {
+                    if (!placed[b.index]) {
+                        missing++;
+                    }
+                }
+                // Dependencies can be cyclic; then the goal with the fewest unplaced predecessors goes next.
+                if (missing < bestMissing || (missing == bestMissing && g.distance > best.distance)) {
+                    best = g;
+                    bestMissing = missing;
+                }
+            }
+            placed[best.index] = true;
+            order.add(best);
+        }
+        return order;
+    }
+
+    public LinkedList<Node> solve() throws IOException {
+        char[] active = new char[this.client.goals.length];
+        Node goal = this.solve(this.client.initialState, new boolean[this.order.size()], 0, active);
+        return goal == null ? null : goal.extractPlan();
+    }
+
+    private Node solve(Node start, boolean[] placed, int placedCount, char[] active) throws IOException {
+        if (placedCount == this.order.size()) {
+            return start;
+        }
+
+        // Candidates in derived order, preferring goals whose predecessors are all placed.
+        ArrayList<Goal> candidates = new ArrayList<>();
+        for (Goal g : this.order) {
+            if (!placed[g.index] && this.ready(g, placed)) {
+                candidates.add(g);
+            }
+        }
+        if (candidates.isEmpty()) {
+            for (Goal g : this.order) {
+                if (!placed[g.index]) {
+                    candidates.add(g);
+                }
+            }
+        }
+
+        for (Goal g : candidates.subList(0, Math.min(MAX_ALTERNATIVES, candidates.size()))) {
+            if (this.failures >= MAX_FAILURES) {
+                return null;
+            }
+            active[g.cell] = g.letter;
+            this.subproblems++;
+            System.err.format("Subgoal %d/%d: %c at %s\n", placedCount + 1, this.order.size(), g.letter, this.position(g));
+
+            Strategy strategy = this.prototype.newInstance(active);
+            Node end = this.client.Search(strategy, start, active, this.expansionLimit);
+            this.explored += strategy.countExplored();
+            if (end != null) {
+                placed[g.index] = true;
+                Node goal = this.solve(end, placed, placedCount + 1, active);
+                if (goal != null) {
+                    return goal;
+                }
+                placed[g.index] = false;
+            } else {
+                this.failures++;
+                System.err.format("Subgoal %c at %s failed, trying an alternative.\n", g.letter, this.position(g));
+            }
+            active[g.cell] = 0;
+        }
+        return null;
+    }
+
+    private boolean ready(Goal g, boolean[] placed) {
+        for (Goal b : g.before) {
+            if (!placed[b.index]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public String searchStatus() {
+        return String.format("#Subproblems: %,6d, #Failed: %,6d, #Explored: %,6d, Time: %3.2f s \t%s", this.subproblems,
+                this.failures, this.explored, (System.currentTimeMillis() - this.startTime) / 1000f, Memory.stringRep());
+    }
+
+    @Override
+    public String toString() {
+        return "Subgoal decomposition using " + this.prototype.toString();
+    }
+}